@@ -0,0 +1,274 @@
+/*************************************************************************
+ *  Compilation:  javac AncestorIndex.java
+ *  Execution:    java AncestorIndex input.txt
+ *  Dependencies: CompactDigraph.java Digraph.java In.java StdIn.java
+ *                StdOut.java
+ *
+ *
+ *  Shortest ancestral paths from a precomputed closure: for every vertex
+ *  the sorted list of the vertices reachable from it, with their
+ *  distances. A query is then a merge of two such lists instead of a
+ *  search of the graph. Meant for rooted DAGs such as WordNet, where the
+ *  lists are short; in general the closure can take V^2 space.
+ *
+ *  Answers are the same as SAP's, ties on the length going to the
+ *  smallest ancestor. The lists are built in parallel.
+ *
+ *  % java AncestorIndex digraph1.txt
+ *  13 vertices, 41 entries, 384 bytes, built in 3 ms
+ *  3 11
+ *  length = 4, ancestor = 1
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class AncestorIndex {
+    // no common ancestor: larger than any packed (length, ancestor)
+    private static final long NONE = Long.MAX_VALUE;
+
+    // smallest range of vertices a build task is split into
+    private static final int BLOCK = 1024;
+
+    private final int V;
+
+    // the vertices reachable from v (v itself included) are
+    // ancestors[start[v]] ... ancestors[start[v + 1] - 1] in increasing
+    // order, each with its distance from v in distances[]
+    private final int[] start;
+    private final int[] ancestors;
+    private final int[] distances;
+
+    private final long buildMillis;
+
+    // index of G, built on the common pool
+    public AncestorIndex(CompactDigraph G) {
+        this(G, ForkJoinPool.commonPool());
+    }
+
+    // index of G, built on the given pool; a null pool builds it serially
+    public AncestorIndex(CompactDigraph G, ForkJoinPool pool) {
+        if (G == null) throw new NullPointerException();
+
+        long begin = System.nanoTime();
+        V = G.V();
+
+        long[][] closures = new long[V][];
+        if (pool == null) {
+            new BuildTask(G, closures, 0, V, V).compute();
+        } else {
+            int grain = Math.max(BLOCK, V / (8 * pool.getParallelism()));
+            pool.invoke(new BuildTask(G, closures, 0, V, grain));
+        }
+
+        start = new int[V + 1];
+        for (int v = 0; v < V; v++) start[v + 1] = start[v] + closures[v].length;
+        ancestors = new int[start[V]];
+        distances = new int[start[V]];
+        for (int v = 0; v < V; v++) {
+            for (int i = 0; i < closures[v].length; i++) {
+                ancestors[start[v] + i] = (int) (closures[v][i] >>> 32);
+                distances[start[v] + i] = (int) closures[v][i];
+            }
+            closures[v] = null;
+        }
+
+        buildMillis = (System.nanoTime() - begin) / 1000000;
+    }
+
+    // closures of vertices [lo, hi), each one a breadth-first search packed
+    // as sorted (ancestor << 32 | distance); ranges above grain are split,
+    // and every leaf allocates its search scratch once
+    private static class BuildTask extends RecursiveAction {
+        private final CompactDigraph G;
+        private final long[][] closures;
+        private final int lo, hi, grain;
+
+        BuildTask(CompactDigraph G, long[][] closures, int lo, int hi, int grain) {
+            this.G = G;
+            this.closures = closures;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        protected void compute() {
+            if (hi - lo > grain) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new BuildTask(G, closures, lo, mid, grain),
+                          new BuildTask(G, closures, mid, hi, grain));
+                return;
+            }
+
+            int[] offsets = G.offsets;
+            int[] targets = G.targets;
+            int[] mark = new int[G.V()];
+            int[] distTo = new int[G.V()];
+            int[] queue = new int[G.V()];
+            for (int s = lo; s < hi; s++) {
+                int epoch = s + 1;
+                int head = 0;
+                int tail = 0;
+                mark[s] = epoch;
+                distTo[s] = 0;
+                queue[tail++] = s;
+                while (head < tail) {
+                    int v = queue[head++];
+                    for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                        int w = targets[i];
+                        if (mark[w] == epoch) continue;
+                        mark[w] = epoch;
+                        distTo[w] = distTo[v] + 1;
+                        queue[tail++] = w;
+                    }
+                }
+
+                long[] closure = new long[tail];
+                for (int i = 0; i < tail; i++) closure[i] = ((long) queue[i] << 32) | distTo[queue[i]];
+                Arrays.sort(closure);
+                closures[s] = closure;
+            }
+        }
+    }
+
+    private boolean inRange(int i) {
+        return 0 <= i && i < V;
+    }
+
+    // best of (length << 32 | ancestor) over best and the common ancestors
+    // of v and w: a merge of their sorted closures
+    private long merge(int v, int w, long best) {
+        int i = start[v];
+        int j = start[w];
+        int iEnd = start[v + 1];
+        int jEnd = start[w + 1];
+        while (i < iEnd && j < jEnd) {
+            int a = ancestors[i];
+            int b = ancestors[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                long path = ((long) (distances[i] + distances[j]) << 32) | a;
+                if (path < best) best = path;
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    private long solve(Iterable<Integer> v, Iterable<Integer> w) {
+        long best = NONE;
+        for (int a : v) {
+            if (!inRange(a)) throw new IndexOutOfBoundsException();
+            for (int b : w) {
+                if (!inRange(b)) throw new IndexOutOfBoundsException();
+                best = merge(a, b, best);
+            }
+        }
+        return best;
+    }
+
+    private long solve(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        long best = NONE;
+        for (int i = vFrom; i < vTo; i++) {
+            if (!inRange(v[i])) throw new IndexOutOfBoundsException();
+            for (int j = wFrom; j < wTo; j++) {
+                if (!inRange(w[j])) throw new IndexOutOfBoundsException();
+                best = merge(v[i], w[j], best);
+            }
+        }
+        return best;
+    }
+
+    private static int length(long path) {
+        if (path == NONE) return -1;
+        return (int) (path >>> 32);
+    }
+
+    private static int ancestor(long path) {
+        if (path == NONE) return -1;
+        return (int) path;
+    }
+
+    // length of shortest ancestral path between v and w; -1 if no such path
+    public int length(int v, int w) {
+        if (!inRange(v) || !inRange(w)) throw new IndexOutOfBoundsException();
+        return length(merge(v, w, NONE));
+    }
+
+    // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
+    public int ancestor(int v, int w) {
+        if (!inRange(v) || !inRange(w)) throw new IndexOutOfBoundsException();
+        return ancestor(merge(v, w, NONE));
+    }
+
+    // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return length(solve(v, w));
+    }
+
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return ancestor(solve(v, w));
+    }
+
+    // as above, for vertex sets given as arrays
+    public int length(int[] v, int[] w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return length(solve(v, 0, v.length, w, 0, w.length));
+    }
+
+    public int ancestor(int[] v, int[] w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return ancestor(solve(v, 0, v.length, w, 0, w.length));
+    }
+
+    // as above, for the vertex sets v[vFrom] ... v[vTo - 1] and
+    // w[wFrom] ... w[wTo - 1]
+    int length(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        return length(solve(v, vFrom, vTo, w, wFrom, wTo));
+    }
+
+    int ancestor(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        return ancestor(solve(v, vFrom, vTo, w, wFrom, wTo));
+    }
+
+    // number of (vertex, ancestor) entries
+    public long size() {
+        return ancestors.length;
+    }
+
+    // memory taken by the index arrays
+    public long bytes() {
+        return 4L * start.length + 8L * ancestors.length;
+    }
+
+    // wall-clock time the build took
+    public long buildMillis() {
+        return buildMillis;
+    }
+
+    public String toString() {
+        return V + " vertices, " + size() + " entries, " + bytes() + " bytes, built in " + buildMillis + " ms";
+    }
+
+    // build the index of a digraph file, then answer queries like SAP
+    public static void main(String[] args) {
+        AncestorIndex index = new AncestorIndex(new CompactDigraph(new Digraph(new In(args[0]))));
+        StdOut.println(index);
+
+        while (!StdIn.isEmpty()) {
+            int v = StdIn.readInt();
+            int w = StdIn.readInt();
+            int length   = index.length(v, w);
+            int ancestor = index.ancestor(v, w);
+            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*************************************************************************
+ *  Compilation:  javac CheckSAP.java
+ *  Execution:    java CheckSAP [trials]
+ *  Dependencies: SAP.java AncestorIndex.java CompactDigraph.java
+ *                SAPMetrics.java Digraph.java In.java Queue.java StdRandom.java
+ *
+ *
+ *  Check SAP.length() and SAP.ancestor(), for single vertices and for
+ *  vertex sets, against the original formulation: two complete BFS from
+ *  the two sides, then the common ancestor with the least total distance,
+ *  the smallest such vertex on ties. Runs over digraph1.txt ... digraph6.txt
+ *  and random digraphs, both DAGs and graphs with cycles, with and without
+ *  a (small, so constantly evicting) result cache, and one SAP shared by
+ *  several threads. AncestorIndex is checked on the same graphs, and
+ *  SAP.lengths() on batches of sets. SAPMetrics must count every query,
+ *  and only while it is enabled; repeated queries must not count as cache
+ *  hits.
+ *
+ *************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CheckSAP {
+
+    private static int[] distances(Digraph G, Iterable<Integer> sources) {
+        int[] distTo = new int[G.V()];
+        Arrays.fill(distTo, -1);
+        Queue<Integer> queue = new Queue<Integer>();
+        for (int s : sources) {
+            if (distTo[s] == 0) continue;
+            distTo[s] = 0;
+            queue.enqueue(s);
+        }
+        while (!queue.isEmpty()) {
+            int v = queue.dequeue();
+            for (int w : G.adj(v)) {
+                if (distTo[w] < 0) {
+                    distTo[w] = distTo[v] + 1;
+                    queue.enqueue(w);
+                }
+            }
+        }
+        return distTo;
+    }
+
+    // { length, ancestor } by the full two-sided search
+    private static int[] reference(Digraph G, Iterable<Integer> v, Iterable<Integer> w) {
+        int[] a = distances(G, v);
+        int[] b = distances(G, w);
+        int length = -1;
+        int ancestor = -1;
+        for (int x = 0; x < G.V(); x++) {
+            if (a[x] < 0 || b[x] < 0) continue;
+            if (length < 0 || a[x] + b[x] < length) {
+                length = a[x] + b[x];
+                ancestor = x;
+            }
+        }
+        return new int[] { length, ancestor };
+    }
+
+    private static Digraph randomDigraph(int V, int E, boolean acyclic) {
+        Digraph G = new Digraph(V);
+        for (int e = 0; e < E; e++) {
+            int v = StdRandom.uniform(V);
+            int w = StdRandom.uniform(V);
+            if (acyclic) {
+                if (v == w) continue;
+                G.addEdge(Math.max(v, w), Math.min(v, w));
+            } else {
+                G.addEdge(v, w);
+            }
+        }
+        return G;
+    }
+
+    private static List<Integer> randomSet(int V) {
+        List<Integer> set = new ArrayList<Integer>();
+        for (int i = 1 + StdRandom.uniform(4); i > 0; i--) set.add(StdRandom.uniform(V));
+        return set;
+    }
+
+    private static boolean check(String name, Digraph G, int queries) {
+        return check(name, new SAP(G), G, queries) && check(name + " cached", new SAP(G, 16), G, queries)
+            && checkIndex(name, G, queries);
+    }
+
+    private static boolean checkIndex(String name, Digraph G, int queries) {
+        AncestorIndex index = new AncestorIndex(new CompactDigraph(G));
+        for (int i = 0; i < queries; i++) {
+            List<Integer> a = randomSet(G.V());
+            List<Integer> b = randomSet(G.V());
+            int[] expected = reference(G, a, b);
+            if (index.length(a, b) != expected[0] || index.ancestor(a, b) != expected[1]) {
+                System.out.printf("%s index: %s %s gives %d %d, expected %d %d\n", name, a, b,
+                                  index.length(a, b), index.ancestor(a, b), expected[0], expected[1]);
+                return false;
+            }
+
+            int v = a.get(0);
+            int w = b.get(0);
+            expected = reference(G, Arrays.asList(v), Arrays.asList(w));
+            if (index.length(v, w) != expected[0] || index.ancestor(v, w) != expected[1]) {
+                System.out.printf("%s index: %d %d gives %d %d, expected %d %d\n", name, v, w,
+                                  index.length(v, w), index.ancestor(v, w), expected[0], expected[1]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean check(String name, SAP sap, Digraph G, int queries) {
+        for (int i = 0; i < queries; i++) {
+            int v = StdRandom.uniform(G.V());
+            int w = StdRandom.uniform(G.V());
+            int[] expected = reference(G, Arrays.asList(v), Arrays.asList(w));
+            if (sap.length(v, w) != expected[0] || sap.ancestor(v, w) != expected[1]) {
+                System.out.printf("%s: %d %d gives %d %d, expected %d %d\n", name, v, w,
+                                  sap.length(v, w), sap.ancestor(v, w), expected[0], expected[1]);
+                return false;
+            }
+
+            List<Integer> a = randomSet(G.V());
+            List<Integer> b = randomSet(G.V());
+            expected = reference(G, a, b);
+            if (sap.length(a, b) != expected[0] || sap.ancestor(a, b) != expected[1]) {
+                System.out.printf("%s: %s %s gives %d %d, expected %d %d\n", name, a, b,
+                                  sap.length(a, b), sap.ancestor(a, b), expected[0], expected[1]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // SAP.lengths() on n random sets against the reference for each pair
+    private static boolean checkLengths(String name, Digraph G, int n) {
+        int[][] sets = new int[n][];
+        for (int i = 0; i < n; i++) {
+            List<Integer> set = randomSet(G.V());
+            sets[i] = new int[set.size()];
+            for (int k = 0; k < sets[i].length; k++) sets[i][k] = set.get(k);
+        }
+
+        int[][] lengths = new SAP(G).lengths(sets);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int expected = reference(G, asList(sets[i]), asList(sets[j]))[0];
+                if (lengths[i][j] != expected) {
+                    System.out.printf("%s lengths: %s %s gives %d, expected %d\n", name,
+                                      asList(sets[i]), asList(sets[j]), lengths[i][j], expected);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static List<Integer> asList(int[] a) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int x : a) list.add(x);
+        return list;
+    }
+
+    // one shared SAP queried from several threads at once, each going
+    // through the same queries in its own order
+    private static boolean concurrent(Digraph G, int threads, int queries) throws InterruptedException {
+        final SAP sap = new SAP(G, 64);
+        final int[] v = new int[queries];
+        final int[] w = new int[queries];
+        final int[][] expected = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            v[i] = StdRandom.uniform(G.V());
+            w[i] = StdRandom.uniform(G.V());
+            expected[i] = reference(G, Arrays.asList(v[i]), Arrays.asList(w[i]));
+        }
+
+        final int[] wrong = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int k = 0; k < v.length; k++) {
+                        int i = (k * (2 * id + 1)) % v.length;
+                        if (sap.length(v[i], w[i]) != expected[i][0]) wrong[id]++;
+                        if (sap.ancestor(w[i], v[i]) != expected[i][1]) wrong[id]++;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+
+        int failed = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            failed += wrong[t];
+        }
+        if (failed > 0) System.out.printf("%d wrong answers from %d threads\n", failed, threads);
+        return failed == 0;
+    }
+
+    // SAPMetrics must count every query once, as a hit, a repeat or a
+    // traversal, agree with the SAP's own counters, and count nothing when
+    // off. Without a cache there are no cache hits, only repeats
+    private static boolean checkMetrics(Digraph G, int queries) {
+        SAP uncached = new SAP(G);
+        for (int i = 0; i < queries; i++) {
+            int v = StdRandom.uniform(G.V());
+            int w = StdRandom.uniform(G.V());
+            uncached.length(v, w);
+            uncached.ancestor(v, w);
+        }
+        if (uncached.cacheHits() != 0 || uncached.repeatedQueries() < queries
+                || uncached.repeatedQueries() + uncached.cacheMisses() != 2 * queries) {
+            System.out.printf("without a cache, %d queries gave %d hits, %d repeats, %d misses\n", 2 * queries,
+                              uncached.cacheHits(), uncached.repeatedQueries(), uncached.cacheMisses());
+            return false;
+        }
+
+        SAP sap = new SAP(G, 64);
+        SAPMetrics.reset();
+        SAPMetrics.enable();
+        for (int i = 0; i < queries; i++) {
+            int v = StdRandom.uniform(G.V());
+            int w = StdRandom.uniform(G.V());
+            sap.length(v, w);
+            sap.ancestor(v, w);
+        }
+        SAPMetrics.disable();
+
+        SAPMetrics.Snapshot snapshot = SAPMetrics.snapshot();
+        if (snapshot.queries() != 2 * queries || snapshot.cacheHits() != sap.cacheHits()
+                || snapshot.repeats() != sap.repeatedQueries() || snapshot.traversals() != sap.cacheMisses()
+                || snapshot.verticesVisited() < 2 * snapshot.traversals()) {
+            System.out.printf("metrics disagree with %d queries: %s\n", 2 * queries, snapshot);
+            return false;
+        }
+
+        sap.length(new int[] { 0 }, new int[] { 1, 2 });
+        if (SAPMetrics.snapshot().queries() != snapshot.queries()) {
+            System.out.println("metrics counted a query while disabled");
+            return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int trials = 200;
+        if (args.length > 0) trials = Integer.parseInt(args[0]);
+
+        int failed = 0;
+        for (int i = 1; i <= 6; i++) {
+            String file = "digraph" + i + ".txt";
+            if (!check(file, new Digraph(new In(file)), 200)) failed++;
+        }
+
+        for (int t = 0; t < trials; t++) {
+            int V = StdRandom.uniform(2, 200);
+            int E = StdRandom.uniform(3 * V);
+            boolean acyclic = t % 2 == 0;
+            String name = "random " + (acyclic ? "DAG" : "digraph") + " V=" + V + " E=" + E;
+            if (!check(name, randomDigraph(V, E, acyclic), 20)) failed++;
+        }
+
+        if (!concurrent(randomDigraph(2000, 3000, true), 8, 4001)) failed++;
+        if (!checkLengths("lengths, serial", randomDigraph(500, 700, true), 20)) failed++;
+        if (!checkLengths("lengths, parallel", randomDigraph(2000, 3000, false), 150)) failed++;
+        if (!checkMetrics(randomDigraph(500, 700, true), 1000)) failed++;
+
+        System.out.printf("%d of %d graphs disagree with the full search\n", failed, 10 + trials);
+    }
+}
@@ -0,0 +1,130 @@
+/*************************************************************************
+ *  Compilation:  javac CompactDigraph.java
+ *  Execution:    java CompactDigraph input.txt
+ *  Dependencies: Digraph.java In.java StdOut.java
+ *
+ *
+ *  An immutable digraph in compressed sparse row form: the vertices
+ *  adjacent from v are targets[offsets[v]] ... targets[offsets[v + 1] - 1].
+ *  Two int arrays in place of a linked list of boxed vertices per vertex,
+ *  so a search scans adjacency lists sequentially, and a single instance
+ *  can be shared by any number of readers.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class CompactDigraph {
+    private final int V;
+
+    // read directly by SAP's searches; never modified after construction
+    final int[] offsets;
+    final int[] targets;
+
+    // the E edges from[i]->to[i], on vertices 0 ... V-1
+    public CompactDigraph(int V, int[] from, int[] to, int E) {
+        if (V < 0) throw new IllegalArgumentException("Number of vertices must be nonnegative");
+        if (E < 0 || E > from.length || E > to.length) throw new IllegalArgumentException();
+
+        this.V = V;
+        offsets = new int[V + 1];
+        for (int i = 0; i < E; i++) {
+            if (from[i] < 0 || from[i] >= V || to[i] < 0 || to[i] >= V) throw new IndexOutOfBoundsException();
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < V; v++) offsets[v + 1] += offsets[v];
+
+        int[] next = Arrays.copyOf(offsets, V);
+        targets = new int[E];
+        for (int i = 0; i < E; i++) targets[next[from[i]]++] = to[i];
+    }
+
+    // the graph with the given arrays, taken over without copying, as read
+    // back from a WordNet snapshot
+    CompactDigraph(int[] offsets, int[] targets) {
+        V = offsets.length - 1;
+        if (V < 0 || offsets[0] != 0 || offsets[V] != targets.length) throw new IllegalArgumentException();
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] > offsets[v + 1]) throw new IllegalArgumentException();
+        }
+        for (int w : targets) {
+            if (w < 0 || w >= V) throw new IndexOutOfBoundsException();
+        }
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // a copy of G
+    public CompactDigraph(Digraph G) {
+        V = G.V();
+        offsets = new int[V + 1];
+        for (int v = 0; v < V; v++) {
+            int degree = 0;
+            for (int w : G.adj(v)) degree++;
+            offsets[v + 1] = offsets[v] + degree;
+        }
+
+        targets = new int[offsets[V]];
+        for (int v = 0; v < V; v++) {
+            int i = offsets[v];
+            for (int w : G.adj(v)) targets[i++] = w;
+        }
+    }
+
+    public int V() {
+        return V;
+    }
+
+    public int E() {
+        return targets.length;
+    }
+
+    public int outdegree(int v) {
+        if (v < 0 || v >= V) throw new IndexOutOfBoundsException();
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // the vertices adjacent from v
+    public Iterable<Integer> adj(final int v) {
+        if (v < 0 || v >= V) throw new IndexOutOfBoundsException();
+        return new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    private int i = offsets[v];
+
+                    public boolean hasNext() {
+                        return i < offsets[v + 1];
+                    }
+
+                    public Integer next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return targets[i++];
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(V + " vertices, " + E() + " edges\n");
+        for (int v = 0; v < V; v++) {
+            s.append(v + ": ");
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) s.append(targets[i] + " ");
+            s.append("\n");
+        }
+        return s.toString();
+    }
+
+    // print the graph read from a digraph file
+    public static void main(String[] args) {
+        CompactDigraph G = new CompactDigraph(new Digraph(new In(args[0])));
+        StdOut.println(G);
+    }
+}
@@ -0,0 +1,166 @@
+/*************************************************************************
+ *  Compilation:  javac NounDictionary.java
+ *  Execution:    none
+ *  Dependencies: none
+ *
+ *
+ *  An immutable dictionary from nouns to the ids of the synsets they
+ *  appear in. The distinct nouns are kept once, in order of first
+ *  appearance, and found through an open-addressing table of their
+ *  positions; the synsets of noun i are
+ *  postings[start[i]] ... postings[start[i + 1] - 1], in increasing order.
+ *  Three arrays and an int table in place of a hash set of the nouns plus
+ *  a hash map from each noun to a tree set of boxed ids.
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class NounDictionary {
+    // read directly by WordNet.save(), and by its queries so that they take
+    // a noun's synsets in place; never modified after construction
+    final String[] nouns;
+    final int[] start;
+    final int[] postings;
+
+    // slots[h] is 1 + the position of a noun whose probe sequence passes h,
+    // or 0; at most half the slots are used, so probes stay short
+    private final int[] slots;
+
+    // the dictionary of n occurrences: noun[i] appears in synset synset[i];
+    // a noun repeated within a synset counts once
+    public NounDictionary(String[] noun, int[] synset, int n) {
+        if (n < 0 || n > noun.length || n > synset.length) throw new IllegalArgumentException();
+
+        // number the distinct nouns in order of first appearance
+        slots = new int[tableSize(n)];
+        String[] distinct = new String[n];
+        int[] which = new int[n];
+        int N = 0;
+        for (int i = 0; i < n; i++) {
+            int h = slot(distinct, noun[i]);
+            if (slots[h] == 0) {
+                distinct[N] = noun[i];
+                slots[h] = ++N;
+            }
+            which[i] = slots[h] - 1;
+        }
+        nouns = Arrays.copyOf(distinct, N);
+
+        // counting sort of the occurrences by noun
+        start = new int[N + 1];
+        for (int i = 0; i < n; i++) start[which[i] + 1]++;
+        for (int i = 0; i < N; i++) start[i + 1] += start[i];
+
+        int[] next = Arrays.copyOf(start, N);
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) all[next[which[i]]++] = synset[i];
+
+        // drop repeated synsets of a noun, compacting in place
+        int size = 0;
+        for (int i = 0; i < N; i++) {
+            int lo = start[i];
+            int hi = start[i + 1];
+            Arrays.sort(all, lo, hi);
+            start[i] = size;
+            for (int j = lo; j < hi; j++) {
+                if (j == lo || all[j] != all[j - 1]) all[size++] = all[j];
+            }
+        }
+        start[N] = size;
+        postings = Arrays.copyOf(all, size);
+    }
+
+    // the dictionary with the given arrays, taken over without copying, as
+    // read back from a WordNet snapshot of V synsets; each noun's postings
+    // must be synset ids in [0, V), strictly increasing
+    NounDictionary(String[] nouns, int[] start, int[] postings, int V) {
+        int N = nouns.length;
+        if (start.length != N + 1 || start[0] != 0 || start[N] != postings.length) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < N; i++) {
+            if (start[i] >= start[i + 1]) throw new IllegalArgumentException();
+            if (postings[start[i]] < 0) throw new IllegalArgumentException();
+            for (int j = start[i] + 1; j < start[i + 1]; j++) {
+                if (postings[j] <= postings[j - 1]) throw new IllegalArgumentException();
+            }
+            if (postings[start[i + 1] - 1] >= V) throw new IllegalArgumentException();
+        }
+        this.nouns = nouns;
+        this.start = start;
+        this.postings = postings;
+
+        slots = new int[tableSize(N)];
+        for (int i = 0; i < N; i++) {
+            int h = slot(nouns, nouns[i]);
+            if (slots[h] != 0) throw new IllegalArgumentException("repeated noun " + nouns[i]);
+            slots[h] = i + 1;
+        }
+    }
+
+    // a power of two at least twice n
+    private static int tableSize(int n) {
+        return Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+    }
+
+    // the slot holding noun, or the empty slot where it would go, with the
+    // nouns numbered so far in keys
+    private int slot(String[] keys, String noun) {
+        int mask = slots.length - 1;
+        int h = noun.hashCode();
+        h = (h ^ (h >>> 16)) & mask;
+        while (slots[h] != 0 && !keys[slots[h] - 1].equals(noun)) h = (h + 1) & mask;
+        return h;
+    }
+
+    // number of distinct nouns
+    public int size() {
+        return nouns.length;
+    }
+
+    // the position of noun among the nouns; -1 if it is not one
+    public int find(String noun) {
+        return slots[slot(nouns, noun)] - 1;
+    }
+
+    public boolean contains(String noun) {
+        return find(noun) >= 0;
+    }
+
+    // the i-th noun
+    public String noun(int i) {
+        return nouns[i];
+    }
+
+    // the ids of the synsets the i-th noun appears in, in increasing order
+    public int[] synsets(int i) {
+        return Arrays.copyOfRange(postings, start[i], start[i + 1]);
+    }
+
+    // all nouns, in order of first appearance
+    public Iterable<String> nouns() {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int i = 0;
+
+                    public boolean hasNext() {
+                        return i < nouns.length;
+                    }
+
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return nouns[i++];
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -8,20 +8,19 @@ public class Outcast {
 
     // given an array of WordNet nouns, return an outcast
     public String outcast(String[] nouns) {
-        int i = 0;
+        int[][] distances = wordNet.distances(nouns);
         int[] dist = new int[nouns.length];
         int max = -1;
         int maxIndex = 0;
 
-        for (String nounA : nouns) {
-            for (String nounB : nouns) {
-                dist[i] += wordNet.distance(nounA, nounB);
+        for (int i = 0; i < nouns.length; i++) {
+            for (int j = 0; j < nouns.length; j++) {
+                dist[i] += distances[i][j];
             }
             if (dist[i] >= max) {
                 maxIndex = i;
                 max = dist[i];
             }
-            i++;
         }
         return nouns[maxIndex];
     }
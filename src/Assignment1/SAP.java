@@ -1,170 +1,474 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Safe to share between threads: the graph is immutable after
+// construction, each query runs on a Search (the per-query scratch)
+// borrowed from a small pool, and the result cache is split into
+// independently locked segments.
 public class SAP {
-    private final Digraph g;
-
-    private boolean[] markedA;
-    private int[] distToA;
-    private boolean[] markedB;
-    private int[] distToB;
-    private int dist;
-    private int ancestor;
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    // upper bound on the number of cache segments
+    private static final int CACHE_SEGMENTS = 16;
+
+    // lengths() of at least PARALLEL_SETS sets runs on the common pool, in
+    // tasks of up to ROWS rows
+    private static final int PARALLEL_SETS = 64;
+    private static final int ROWS = 16;
+
+    // the graph, in compressed sparse row form: the vertices adjacent from
+    // v are targets[offsets[v]] ... targets[offsets[v + 1] - 1]
+    private final int V;
+    private final int[] offsets;
+    private final int[] targets;
+
+    // idle Searches, one per slot. A thread starts looking at the slot its
+    // id hashes to, so threads that query in turn keep reusing the same
+    // scratch; there are a few slots per processor, enough for every
+    // thread running a query at once to find one
+    private final AtomicReferenceArray<Search> pool;
+
+    // optional LRU cache of solved queries, least recently used first in
+    // each segment. Keys are unordered SetPairs, two vertices being two
+    // sets of one; values pack the length and the ancestor
+    private final Segment[] cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder repeats = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        if (G == null) throw new NullPointerException();
+        this(new CompactDigraph(G), 0);
+    }
 
-        g = new Digraph(G);
+    // as above, caching the results of up to cacheCapacity distinct queries
+    public SAP(Digraph G, int cacheCapacity) {
+        this(new CompactDigraph(G), cacheCapacity);
+    }
 
-        markedA = new boolean[g.V()];
-        distToA = new int[g.V()];
+    // as above, searching G itself; it is immutable, so it is not copied
+    public SAP(CompactDigraph G) {
+        this(G, 0);
+    }
 
-        markedB = new boolean[g.V()];
-        distToB = new int[g.V()];
+    public SAP(CompactDigraph G, int cacheCapacity) {
+        if (G == null) throw new NullPointerException();
+        if (cacheCapacity < 0) throw new IllegalArgumentException();
 
-        for (int v = 0; v < g.V(); v++) {
-            distToA[v] = Integer.MAX_VALUE;
-            distToB[v] = Integer.MAX_VALUE;
-        }
+        V = G.V();
+        offsets = G.offsets;
+        targets = G.targets;
 
+        int processors = Runtime.getRuntime().availableProcessors();
+        pool = new AtomicReferenceArray<Search>(Integer.highestOneBit(4 * processors - 1) << 1);
+
+        if (cacheCapacity == 0) {
+            cache = null;
+        } else {
+            int segments = Integer.highestOneBit(Math.min(CACHE_SEGMENTS, cacheCapacity));
+            cache = new Segment[segments];
+            for (int i = 0; i < segments; i++) cache[i] = new Segment(cacheCapacity / segments);
+        }
     }
 
     private boolean inRange(int i) {
-        return 0 <= i && i < g.V();
+        return 0 <= i && i < V;
     }
 
+    private int home() {
+        return (int) Thread.currentThread().getId() & (pool.length() - 1);
+    }
 
-    private void bfs(Digraph G, int s, int t) {
-        Queue<Integer> p = new Queue<Integer>();
-        Queue<Integer> q = new Queue<Integer>();
+    // an idle Search, a new one if all are taken
+    private Search acquire() {
+        int n = pool.length();
+        int home = home();
+        for (int i = 0; i < n; i++) {
+            int slot = (home + i) & (n - 1);
+            if (pool.get(slot) == null) continue;
+            Search s = pool.getAndSet(slot, null);
+            if (s != null) return s;
+        }
+        return new Search();
+    }
 
-        markedA[s] = true;
-        distToA[s] = 0;
+    // give s back; dropped if the pool is full
+    private void release(Search s) {
+        int n = pool.length();
+        int home = home();
+        for (int i = 0; i < n; i++) {
+            int slot = (home + i) & (n - 1);
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, s)) return;
+        }
+    }
 
-        markedB[t] = true;
-        distToB[t] = 0;
+    // one locked part of the cache, holding the keys that hash to it
+    private final class Segment extends LinkedHashMap<SetPair, Long> {
+        private final int capacity;
 
-        SET<Integer> ancestorA = new SET<Integer>();
-        SET<Integer> ancestorB = new SET<Integer>();
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
 
-        ancestorA.add(s);
-        ancestorB.add(t);
+        protected boolean removeEldestEntry(Map.Entry<SetPair, Long> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
 
-        dist = Integer.MAX_VALUE;
-        ancestor = -1;
+    private Segment segment(SetPair key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return cache[h & (cache.length - 1)];
+    }
 
-        p.enqueue(s);
-        q.enqueue(t);
+    // the vertices of s, in an array
+    private static int[] toArray(Iterable<Integer> s) {
+        int[] a = new int[4];
+        int n = 0;
+        for (int v : s) {
+            if (n == a.length) a = Arrays.copyOf(a, 2 * n);
+            a[n++] = v;
+        }
+        return Arrays.copyOf(a, n);
+    }
 
-        while (!p.isEmpty()) {
-            int w = p.dequeue();
-            for (int x : G.adj(w)) {
-                if (!markedA[x]) {
-                    distToA[x] = distToA[w] + 1;
-                    markedA[x] = true;
-                    ancestorA.add(x);
-                    p.enqueue(x);
-                }
-            }
+    // is s[from] ... s[to - 1] in canonical form: strictly increasing, as
+    // WordNet's postings are
+    private static boolean isCanonical(int[] s, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (s[i] <= s[i - 1]) return false;
         }
+        return true;
+    }
 
-        while (!q.isEmpty()) {
-            int v = q.dequeue();
-            for (int y : G.adj(v)) {
-                if (!markedB[y]) {
-                    distToB[y] = distToB[v] + 1;
-                    markedB[y] = true;
-                    ancestorB.add(y);
-                    q.enqueue(y);
-                }
-            }
+    // canonical form of the vertex set s[from] ... s[to - 1]: sorted,
+    // without duplicates
+    private static int[] canonical(int[] s, int from, int to) {
+        int[] a = Arrays.copyOfRange(s, from, to);
+        Arrays.sort(a);
+
+        int distinct = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (distinct == 0 || a[i] != a[distinct - 1]) a[distinct++] = a[i];
         }
+        return Arrays.copyOf(a, distinct);
+    }
 
-        for (int i : ancestorA) {
-            if (ancestorB.contains(i)) {
-                if (distToA[i] + distToB[i] < dist) {
-                    dist = distToA[i] + distToB[i];
-                    ancestor = i;
-                }
+    // cache key of two canonical vertex sets, each a range of an array, in
+    // either order. Each Search probes the cache with one key of its own,
+    // set() to the query's ranges, so a lookup allocates nothing; only the
+    // copy() of a key that is stored owns its arrays, and is never set()
+    private static class SetPair {
+        private int[] a, b;
+        private int aFrom, aTo, bFrom, bTo;
+        private int hash;
+
+        SetPair set(int[] s, int sFrom, int sTo, int[] t, int tFrom, int tTo) {
+            a = s;
+            aFrom = sFrom;
+            aTo = sTo;
+            b = t;
+            bFrom = tFrom;
+            bTo = tTo;
+            hash = hash(s, sFrom, sTo) + hash(t, tFrom, tTo);
+            return this;
+        }
+
+        SetPair copy() {
+            return new SetPair().set(Arrays.copyOfRange(a, aFrom, aTo), 0, aTo - aFrom,
+                                     Arrays.copyOfRange(b, bFrom, bTo), 0, bTo - bFrom);
+        }
+
+        // Arrays.hashCode() of the range, mixed so that sums of the hashes
+        // of small sets still spread over the table
+        private static int hash(int[] s, int from, int to) {
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + s[i];
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equal(int[] s, int sFrom, int sTo, int[] t, int tFrom, int tTo) {
+            if (sTo - sFrom != tTo - tFrom) return false;
+            for (int i = sFrom, j = tFrom; i < sTo; i++, j++) {
+                if (s[i] != t[j]) return false;
             }
+            return true;
         }
 
-        for (int i : ancestorA) {
-            markedA[i] = false;
-            distToA[i] = Integer.MAX_VALUE;
+        public int hashCode() {
+            return hash;
         }
 
-        for (int i : ancestorB) {
-            markedB[i] = false;
-            distToB[i] = Integer.MAX_VALUE;
+        public boolean equals(Object other) {
+            if (!(other instanceof SetPair)) return false;
+            SetPair that = (SetPair) other;
+            if (hash != that.hash) return false;
+            return (equal(a, aFrom, aTo, that.a, that.aFrom, that.aTo)
+                    && equal(b, bFrom, bTo, that.b, that.bFrom, that.bTo))
+                || (equal(a, aFrom, aTo, that.b, that.bFrom, that.bTo)
+                    && equal(b, bFrom, bTo, that.a, that.aFrom, that.aTo));
         }
     }
 
+    // the scratch state of one query at a time, allocated once: v is marked
+    // from side A in the current query iff markA[v] == epoch, so starting a
+    // query is a counter increment rather than a pass resetting the
+    // previous one's vertices
+    private final class Search {
+        private final int[] markA = new int[V];
+        private final int[] distToA = new int[V];
+        private final int[] markB = new int[V];
+        private final int[] distToB = new int[V];
+        private int epoch;
+        private int dist;
+        private int ancestor;
+
+        // the two BFS queues; a vertex enters each at most once per query,
+        // so V slots never wrap around. Each level is the range [head, tail)
+        private final int[] queueA = new int[V];
+        private final int[] queueB = new int[V];
+        private int headA, tailA;
+        private int headB, tailB;
+
+        // the last single vertex pair this Search solved, smaller vertex
+        // first, so that length() followed by ancestor() on the same pair
+        // usually searches only once
+        private int lastV = -1;
+        private int lastW = -1;
+
+        // the key this Search probes the cache with, and the two vertices
+        // of a single pair query as sets of one
+        private final SetPair probe = new SetPair();
+        private final int[] pair = new int[2];
+
+        // a vertex both sides reached is a common ancestor; ties on the
+        // length go to the smallest vertex, as when the ancestors were kept
+        // in a SET
+        private void consider(int x) {
+            int sum = distToA[x] + distToB[x];
+            if (sum < dist || (sum == dist && x < ancestor)) {
+                dist = sum;
+                ancestor = x;
+            }
+        }
 
-    private void bfs(Digraph G, Iterable<Integer> s, Iterable<Integer> t) {
-        Queue<Integer> p = new Queue<Integer>();
-        Queue<Integer> q = new Queue<Integer>();
+        private void visitA(int x, int d) {
+            markA[x] = epoch;
+            distToA[x] = d;
+            queueA[tailA++] = x;
+            if (markB[x] == epoch) consider(x);
+        }
 
-        dist = Integer.MAX_VALUE;
-        ancestor = -1;
+        private void visitB(int x, int d) {
+            markB[x] = epoch;
+            distToB[x] = d;
+            queueB[tailB++] = x;
+            if (markA[x] == epoch) consider(x);
+        }
 
+        private void start() {
+            if (++epoch == 0) {
+                Arrays.fill(markA, 0);
+                Arrays.fill(markB, 0);
+                epoch = 1;
+            }
+            headA = 0;
+            tailA = 0;
+            headB = 0;
+            tailB = 0;
 
-        SET<Integer> ancestorA = new SET<Integer>();
-        SET<Integer> ancestorB = new SET<Integer>();
+            dist = INFINITY;
+            ancestor = -1;
+        }
 
-        for (int a : s) {
-            markedA[a] = true;
-            distToA[a] = 0;
-            ancestorA.add(a);
-            p.enqueue(a);
+        // advance the two searches level by level, always the one that is
+        // behind. Once side A has finished level levelA every vertex within
+        // levelA of it is marked, so an ancestor not yet reached by both
+        // sides is at least min(levelA, levelB) + 1 away; when that exceeds
+        // the best length found, neither a shorter path nor a tie remains
+        private void search() {
+            int levelA = 0;
+            int levelB = 0;
+
+            while (headA < tailA || headB < tailB) {
+                int doneA = (headA == tailA) ? INFINITY : levelA;
+                int doneB = (headB == tailB) ? INFINITY : levelB;
+                if (dist != INFINITY && Math.min(doneA, doneB) >= dist) break;
+
+                if (doneA <= doneB) {
+                    for (int end = tailA; headA < end; headA++) {
+                        int w = queueA[headA];
+                        for (int i = offsets[w]; i < offsets[w + 1]; i++) {
+                            int x = targets[i];
+                            if (markA[x] != epoch) visitA(x, distToA[w] + 1);
+                        }
+                    }
+                    levelA++;
+                } else {
+                    for (int end = tailB; headB < end; headB++) {
+                        int v = queueB[headB];
+                        for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                            int y = targets[i];
+                            if (markB[y] != epoch) visitB(y, distToB[v] + 1);
+                        }
+                    }
+                    levelB++;
+                }
+            }
         }
 
-        for (int b : t) {
-            markedB[b] = true;
-            distToB[b] = 0;
-            ancestorB.add(b);
-            q.enqueue(b);
+        private void bfs(int s, int t) {
+            long begin = SAPMetrics.start();
+            start();
+            visitA(s, 0);
+            visitB(t, 0);
+            search();
+            SAPMetrics.traversal(begin, tailA + tailB, Math.max(tailA, tailB));
         }
 
-        while (!p.isEmpty()) {
-            int w = p.dequeue();
-            for (int x : G.adj(w)) {
-                if (!markedA[x]) {
-                    distToA[x] = distToA[w] + 1;
-                    markedA[x] = true;
-                    p.enqueue(x);
-                    ancestorA.add(x);
+        // the vertices reachable from any vertex of s, each with its
+        // distance, packed as sorted (vertex << 32 | distance): one
+        // complete breadth-first search on side A
+        private long[] closure(int[] s) {
+            long begin = SAPMetrics.start();
+            lastV = -1;
+            start();
+            for (int a : s) {
+                if (markA[a] != epoch) visitA(a, 0);
+            }
+            while (headA < tailA) {
+                int w = queueA[headA++];
+                for (int i = offsets[w]; i < offsets[w + 1]; i++) {
+                    int x = targets[i];
+                    if (markA[x] != epoch) visitA(x, distToA[w] + 1);
                 }
             }
+
+            long[] closure = new long[tailA];
+            for (int i = 0; i < tailA; i++) closure[i] = ((long) queueA[i] << 32) | distToA[queueA[i]];
+            Arrays.sort(closure);
+            SAPMetrics.traversal(begin, tailA, tailA);
+            return closure;
         }
 
-        while (!q.isEmpty()) {
-            int v = q.dequeue();
-            for (int y : G.adj(v)) {
-                if (!markedB[y]) {
-                    distToB[y] = distToB[v] + 1;
-                    markedB[y] = true;
-                    q.enqueue(y);
-                    ancestorB.add(y);
-                }
+        private void bfs(int[] s, int sFrom, int sTo, int[] t, int tFrom, int tTo) {
+            long begin = SAPMetrics.start();
+            start();
+            for (int i = sFrom; i < sTo; i++) {
+                if (markA[s[i]] != epoch) visitA(s[i], 0);
             }
+            for (int i = tFrom; i < tTo; i++) {
+                if (markB[t[i]] != epoch) visitB(t[i], 0);
+            }
+            search();
+            SAPMetrics.traversal(begin, tailA + tailB, Math.max(tailA, tailB));
         }
 
-        for (int i : ancestorA) {
-            if (ancestorB.contains(i)) {
-                if (distToA[i] + distToB[i] < dist) {
-                    dist = distToA[i] + distToB[i];
-                    ancestor = i;
-                }
+        // set dist and ancestor from a cache hit; true if there was one
+        private boolean lookup(SetPair key) {
+            if (cache == null) return false;
+            Segment segment = segment(key);
+            Long result;
+            synchronized (segment) {
+                result = segment.get(key);
             }
+            if (result == null) return false;
+            dist = (int) (result >>> 32);
+            ancestor = (int) (long) result;
+            return true;
         }
 
-        for (int i : ancestorA) {
-            markedA[i] = false;
-            distToA[i] = Integer.MAX_VALUE;
+        private void store(SetPair key) {
+            if (cache == null) return;
+            key = key.copy();
+            Segment segment = segment(key);
+            Long result = ((long) dist << 32) | (ancestor & 0xffffffffL);
+            synchronized (segment) {
+                segment.put(key, result);
+            }
         }
 
-        for (int i : ancestorB) {
-            markedB[i] = false;
-            distToB[i] = Integer.MAX_VALUE;
+        // both answers are symmetric in v and w (the ancestor is the
+        // smallest of the closest common ones), so v and w are solved in
+        // sorted order
+        private void solve(int v, int w) {
+            if (v > w) {
+                int t = v;
+                v = w;
+                w = t;
+            }
+            if (v == lastV && w == lastW) {
+                repeats.increment();
+                SAPMetrics.repeat();
+                return;
+            }
+
+            SetPair key = null;
+            if (cache != null) {
+                pair[0] = v;
+                pair[1] = w;
+                key = probe.set(pair, 0, 1, pair, 1, 2);
+            }
+            if (lookup(key)) {
+                hits.increment();
+                SAPMetrics.hit();
+            } else {
+                misses.increment();
+                lastV = -1;
+                bfs(v, w);
+                store(key);
+            }
+            lastV = v;
+            lastW = w;
+        }
+
+        // the vertex sets v[vFrom] ... v[vTo - 1] and w[wFrom] ... w[wTo - 1]
+        private void solve(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+            if (cache == null) {
+                misses.increment();
+                lastV = -1;
+                bfs(v, vFrom, vTo, w, wFrom, wTo);
+                return;
+            }
+
+            if (!isCanonical(v, vFrom, vTo)) {
+                v = canonical(v, vFrom, vTo);
+                vFrom = 0;
+                vTo = v.length;
+            }
+            if (!isCanonical(w, wFrom, wTo)) {
+                w = canonical(w, wFrom, wTo);
+                wFrom = 0;
+                wTo = w.length;
+            }
+            if (vTo - vFrom == 1 && wTo - wFrom == 1) {
+                solve(v[vFrom], w[wFrom]);
+                return;
+            }
+
+            lastV = -1;
+            SetPair key = probe.set(v, vFrom, vTo, w, wFrom, wTo);
+            if (lookup(key)) {
+                hits.increment();
+                SAPMetrics.hit();
+            } else {
+                misses.increment();
+                bfs(v, vFrom, vTo, w, wFrom, wTo);
+                store(key);
+            }
         }
     }
 
@@ -172,8 +476,11 @@ public class SAP {
     public int length(int v, int w) {
         if (!inRange(v) || !inRange(w)) throw new IndexOutOfBoundsException();
 
-        bfs(g, v, w);
-        if (dist == Integer.MAX_VALUE) return -1;
+        Search s = acquire();
+        s.solve(v, w);
+        int dist = s.dist;
+        release(s);
+        if (dist == INFINITY) return -1;
         return dist;
     }
 
@@ -181,26 +488,164 @@ public class SAP {
     public int ancestor(int v, int w) {
         if (!inRange(v) || !inRange(w)) throw new IndexOutOfBoundsException();
 
-        bfs(g, v, w);
+        Search s = acquire();
+        s.solve(v, w);
+        int ancestor = s.ancestor;
+        release(s);
         return ancestor;
     }
 
     // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
         if (v == null || w == null) throw new NullPointerException();
-
-        bfs(g, v, w);
-        if (dist == Integer.MAX_VALUE) return -1;
-        return dist;
+        return length(toArray(v), toArray(w));
     }
 
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
         if (v == null || w == null) throw new NullPointerException();
+        return ancestor(toArray(v), toArray(w));
+    }
+
+    // as above, for vertex sets given as arrays
+    public int length(int[] v, int[] w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return length(v, 0, v.length, w, 0, w.length);
+    }
+
+    public int ancestor(int[] v, int[] w) {
+        if (v == null || w == null) throw new NullPointerException();
+        return ancestor(v, 0, v.length, w, 0, w.length);
+    }
+
+    // as above, for the vertex sets v[vFrom] ... v[vTo - 1] and
+    // w[wFrom] ... w[wTo - 1], e.g. a noun's synsets within WordNet's
+    // postings, which are not copied
+    int length(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        Search s = acquire();
+        s.solve(v, vFrom, vTo, w, wFrom, wTo);
+        int dist = s.dist;
+        release(s);
+        if (dist == INFINITY) return -1;
+        return dist;
+    }
 
-        bfs(g, v, w);
+    int ancestor(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+        Search s = acquire();
+        s.solve(v, vFrom, vTo, w, wFrom, wTo);
+        int ancestor = s.ancestor;
+        release(s);
         return ancestor;
     }
 
+    // lengths[i][j] is length(sets[i], sets[j]), for every i and j, from
+    // one search per set instead of one per pair: the distances to the
+    // ancestors of each set are kept and each pair merges two such lists.
+    // Large batches run on the common pool
+    public int[][] lengths(int[][] sets) {
+        if (sets == null) throw new NullPointerException();
+        for (int[] set : sets) {
+            if (set == null) throw new NullPointerException();
+        }
+
+        int n = sets.length;
+        long[][] closures = new long[n][];
+        int[][] lengths = new int[n][n];
+        RowsTask searches = new RowsTask(sets, closures, null, 0, n);
+        RowsTask merges = new RowsTask(sets, closures, lengths, 0, n);
+        if (n >= PARALLEL_SETS) {
+            ForkJoinPool.commonPool().invoke(searches);
+            ForkJoinPool.commonPool().invoke(merges);
+        } else {
+            searches.compute();
+            merges.compute();
+        }
+        return lengths;
+    }
+
+    // rows [lo, hi) of a lengths() matrix. Without a matrix: the closures
+    // of those sets. With one, once all closures exist: the entries at and
+    // right of the diagonal, with their mirror images
+    private class RowsTask extends RecursiveAction {
+        private final int[][] sets;
+        private final long[][] closures;
+        private final int[][] lengths;
+        private final int lo, hi;
+
+        RowsTask(int[][] sets, long[][] closures, int[][] lengths, int lo, int hi) {
+            this.sets = sets;
+            this.closures = closures;
+            this.lengths = lengths;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > ROWS && getPool() != null) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new RowsTask(sets, closures, lengths, lo, mid),
+                          new RowsTask(sets, closures, lengths, mid, hi));
+                return;
+            }
+
+            if (lengths == null) {
+                Search s = acquire();
+                for (int i = lo; i < hi; i++) closures[i] = s.closure(sets[i]);
+                release(s);
+                return;
+            }
+            for (int i = lo; i < hi; i++) {
+                for (int j = i; j < closures.length; j++) {
+                    lengths[i][j] = merge(closures[i], closures[j]);
+                    lengths[j][i] = lengths[i][j];
+                }
+            }
+        }
+    }
+
+    // length of the shortest path through a vertex in both closures; -1 if none
+    private static int merge(long[] a, long[] b) {
+        int best = INFINITY;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            long x = a[i] >>> 32;
+            long y = b[j] >>> 32;
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                best = Math.min(best, (int) a[i] + (int) b[j]);
+                i++;
+                j++;
+            }
+        }
+        if (best == INFINITY) return -1;
+        return best;
+    }
+
+    // queries answered from the cache; always 0 without one
+    public long cacheHits() {
+        return hits.sum();
+    }
+
+    // queries that needed a search
+    public long cacheMisses() {
+        return misses.sum();
+    }
+
+    // queries for the same pair of vertices as the one before on the same
+    // scratch, e.g. ancestor() right after length(), answered from its
+    // result whether or not there is a cache; counted in neither of the above
+    public long repeatedQueries() {
+        return repeats.sum();
+    }
+
+    // cached results dropped to stay within the capacity
+    public long cacheEvictions() {
+        return evictions.sum();
+    }
+
     // do unit testing of this class
     public static void main(String[] args) {
         In in = new In("Digraph1.txt");
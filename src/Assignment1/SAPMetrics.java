@@ -0,0 +1,253 @@
+/*************************************************************************
+ *  Compilation:  javac SAPMetrics.java
+ *  Execution:    none
+ *  Dependencies: none
+ *
+ *
+ *  Optional instrumentation of SAP queries, off unless the system
+ *  property algs4.metrics is true or enable() is called. While it is on,
+ *  every query is counted as a cache hit, a repeat (the same pair of
+ *  vertices as the query before, answered from its result with or without
+ *  a cache) or a traversal, and every traversal records its time, the
+ *  number of vertices it visited and the queue high-water mark (the most
+ *  slots either BFS queue used), into counters and power-of-two
+ *  histograms that snapshot() reads. The full closures lengths() runs are
+ *  counted as traversals too.
+ *
+ *  Each query is also a JDK Flight Recorder event, algs4.SAPQuery, which
+ *  a recording picks up when it has the event enabled. The event lives in
+ *  jfr/SAPEvents.java, apart from the rest, as it needs JDK 11 or later
+ *  to compile and run; it is looked up by name when metrics are first
+ *  enabled, and without it (or jdk.jfr) the counters work as before, so
+ *  SAP itself needs nothing newer than Java 8. With it, e.g.
+ *
+ *      javac *.java && javac -d . jfr/SAPEvents.java
+ *      java -Dalgs4.metrics=true -XX:StartFlightRecording=filename=sap.jfr ...
+ *      jfr print --events algs4.SAPQuery sap.jfr
+ *
+ *  Off, a query pays one read of a volatile flag.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class SAPMetrics {
+    // start() when instrumentation is off
+    static final long OFF = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+
+    // where queries go besides the counters; null if SAPEvents is missing
+    private static volatile Recorder recorder;
+    private static boolean looked;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder repeats = new LongAdder();
+    private static final LongAdder traversals = new LongAdder();
+    private static final LongAdder visited = new LongAdder();
+    private static final AtomicLong maxHighWater = new AtomicLong();
+    private static final Histogram nanos = new Histogram();
+    private static final Histogram vertices = new Histogram();
+
+    static {
+        if (Boolean.getBoolean("algs4.metrics")) enable();
+    }
+
+    private SAPMetrics() { }
+
+    // receives every query while metrics are on, as SAPEvents does
+    interface Recorder {
+        void query(boolean cacheHit, boolean repeat, int visited, int queueHighWater, long nanos);
+    }
+
+    // counts of values in buckets of powers of two: bucket i holds the
+    // values v with 2^(i-1) <= v < 2^i, bucket 0 the zeros
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void add(long value) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(value, 0)));
+        }
+
+        long[] counts() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) counts[i] = buckets.get(i);
+            return counts;
+        }
+
+        void clear() {
+            for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        }
+    }
+
+    public static void enable() {
+        synchronized (SAPMetrics.class) {
+            if (!looked) {
+                looked = true;
+                try {
+                    recorder = (Recorder) Class.forName("SAPEvents").getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    recorder = null;
+                }
+            }
+        }
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // the time a traversal starts, or OFF
+    static long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    // a query answered from the cache
+    static void hit() {
+        if (!enabled) return;
+        hits.increment();
+
+        Recorder r = recorder;
+        if (r != null) r.query(true, false, 0, 0, 0);
+    }
+
+    // a query answered from the result of the one before
+    static void repeat() {
+        if (!enabled) return;
+        repeats.increment();
+
+        Recorder r = recorder;
+        if (r != null) r.query(false, true, 0, 0, 0);
+    }
+
+    // a traversal begun at start, which visited n vertices and used at
+    // most highWater slots of a queue
+    static void traversal(long start, int n, int highWater) {
+        if (start == OFF) return;
+        long time = System.nanoTime() - start;
+
+        traversals.increment();
+        visited.add(n);
+        nanos.add(time);
+        vertices.add(n);
+        for (long max = maxHighWater.get(); highWater > max; max = maxHighWater.get()) {
+            if (maxHighWater.compareAndSet(max, highWater)) break;
+        }
+
+        Recorder r = recorder;
+        if (r != null) r.query(false, false, n, highWater, time);
+    }
+
+    // the counters so far, read one by one while queries may be running,
+    // so they are only roughly consistent with each other
+    public static Snapshot snapshot() {
+        return new Snapshot(hits.sum(), repeats.sum(), traversals.sum(), visited.sum(), maxHighWater.get(),
+                            nanos.counts(), vertices.counts());
+    }
+
+    // zero all counters
+    public static void reset() {
+        hits.reset();
+        repeats.reset();
+        traversals.reset();
+        visited.reset();
+        maxHighWater.set(0);
+        nanos.clear();
+        vertices.clear();
+    }
+
+    public static final class Snapshot {
+        private final long hits;
+        private final long repeats;
+        private final long traversals;
+        private final long visited;
+        private final long maxHighWater;
+        private final long[] nanos;
+        private final long[] vertices;
+
+        Snapshot(long hits, long repeats, long traversals, long visited, long maxHighWater,
+                 long[] nanos, long[] vertices) {
+            this.hits = hits;
+            this.repeats = repeats;
+            this.traversals = traversals;
+            this.visited = visited;
+            this.maxHighWater = maxHighWater;
+            this.nanos = nanos;
+            this.vertices = vertices;
+        }
+
+        public long queries() {
+            return hits + repeats + traversals;
+        }
+
+        // queries answered from the cache
+        public long cacheHits() {
+            return hits;
+        }
+
+        // queries answered from the result of the one before
+        public long repeats() {
+            return repeats;
+        }
+
+        public long traversals() {
+            return traversals;
+        }
+
+        // the share of queries answered from the cache
+        public double hitRate() {
+            if (queries() == 0) return 0;
+            return hits / (double) queries();
+        }
+
+        // total vertices visited by all traversals
+        public long verticesVisited() {
+            return visited;
+        }
+
+        // most slots a queue of any traversal used
+        public long maxQueueHighWater() {
+            return maxHighWater;
+        }
+
+        // an upper bound, within a factor of two, on the p-th quantile of
+        // the traversal times, in nanoseconds
+        public long traversalNanos(double p) {
+            return quantile(nanos, p);
+        }
+
+        // the same for the vertices visited per traversal
+        public long verticesVisited(double p) {
+            return quantile(vertices, p);
+        }
+
+        private static long quantile(long[] counts, double p) {
+            long total = 0;
+            for (long count : counts) total += count;
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(rank, 1)) return (i == 0) ? 0 : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public String toString() {
+            return String.format("%d queries, %.1f%% cache hits, %d repeats, %d traversals: median %d us, "
+                                 + "p99 %d us, median %d vertices, p99 %d vertices, queue high-water %d",
+                                 queries(), 100 * hitRate(), repeats, traversals, traversalNanos(0.5) / 1000,
+                                 traversalNanos(0.99) / 1000, verticesVisited(0.5), verticesVisited(0.99),
+                                 maxHighWater);
+        }
+    }
+}
@@ -1,102 +1,367 @@
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class WordNet {
+    // distinct noun pairs whose distance and ancestor are remembered
+    private static final int CACHE_CAPACITY = 1 << 16;
+
+    // a snapshot starts with MAGIC ("WNet") and the VERSION of its layout
+    private static final int MAGIC = 0x574e6574;
+    private static final int VERSION = 1;
+
     private int V;
-    private SET<String>[] adjNouns;
     private String[] synsetArray;
-    private HashSet<String> words;
-    private final Digraph g;
+    private NounDictionary dictionary;
+    private final CompactDigraph g;
     private final SAP sap;
-    private HashMap<String, SET<Integer>> map;
+    private final AncestorIndex index;
 
 
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
+        this(synsets, hypernyms, false);
+    }
+
+    // as above; with index set, distance() and sap() are answered from an
+    // AncestorIndex built here instead of by searching the graph
+    public WordNet(String synsets, String hypernyms, boolean index) {
         if (synsets == null || hypernyms == null) throw new NullPointerException();
 
-        words = new HashSet<String>();
-        In inSynsets = new In(synsets);
+        readSynsets(read(synsets));
 
-        V = 0;
-        String line;
-        while ((line = inSynsets.readLine()) != null && !line.trim().isEmpty()) V++;
+        int[] from = new int[V];
+        int[] to = new int[V];
+        int E = 0;
 
-        synsetArray =  new String[V];
-        adjNouns = (SET<String>[]) new SET[V];
-        map = new HashMap<String, SET<Integer>>();
+        // each line is a synset id followed by the ids of its hypernyms;
+        // like the synsets, the file ends at the first blank line
+        byte[] b = read(hypernyms);
+        for (int i = 0, next; i < b.length; i = next) {
+            int end = lineEnd(b, i);
+            next = end + 1;
+            if (end > i && b[end - 1] == '\r') end--;
+            if (blank(b, i, end)) break;
 
-        inSynsets = new In(synsets);
-        for (int v = 0; v < V; v++) {
-            String synset = inSynsets.readLine().split(",")[1];
-            synsetArray[v] = synset;
-            String[] syns = synset.split(" ");
-            adjNouns[v] = new SET<String>();
-            for (String syn : syns) {
-                SET<Integer> set = new SET<Integer>();
-                adjNouns[v].add(syn);
-                if (map.containsKey(syn)) {
-                    SET<Integer> newSet = map.get(syn);
-                    newSet.add(v);
-                    map.put(syn, newSet);
-                } else {
-                    set.add(v);
-                    map.put(syn, set);
+            int comma = indexOf(b, ',', i, end);
+            int v = parseInt(b, i, comma);
+            while (comma < end) {
+                int field = comma + 1;
+                comma = indexOf(b, ',', field, end);
+                if (field == end) break;
+                int w = parseInt(b, field, comma);
+                if (v == w) continue;
+                if (E == from.length) {
+                    from = Arrays.copyOf(from, Math.max(1, 2 * E));
+                    to = Arrays.copyOf(to, Math.max(1, 2 * E));
                 }
+                from[E] = v;
+                to[E] = w;
+                E++;
             }
         }
+        g = new CompactDigraph(V, from, to, E);
 
+        // The constructor should throw a java.lang.IllegalArgumentException if the input does not
+        // correspond to a rooted DAG.
+        int numRoot = 0;
         for (int v = 0; v < V; v++) {
-            for (String noun : adjNouns[v]) words.add(noun);
+            if (g.outdegree(v) == 0) numRoot++;
         }
+        if (numRoot != 1) throw new IllegalArgumentException();
 
-        g = new Digraph(V);
+        sap = new SAP(g, CACHE_CAPACITY);
+        this.index = index ? new AncestorIndex(g) : null;
+    }
+
+    // a WordNet read back from a snapshot
+    private WordNet(String[] synsetArray, NounDictionary dictionary, CompactDigraph g, boolean index) {
+        V = synsetArray.length;
+        this.synsetArray = synsetArray;
+        this.dictionary = dictionary;
+        this.g = g;
+
+        sap = new SAP(g, CACHE_CAPACITY);
+        this.index = index ? new AncestorIndex(g) : null;
+    }
+
+    // save everything built from the input files to a snapshot file, which
+    // load() maps back in without parsing the text again. All sections are
+    // whole ints, big-endian, after the header MAGIC, VERSION, V, E, N:
+    //   the graph            int[V + 1] offsets, int[E] targets
+    //   the synsets          string table of V entries
+    //   the nouns            string table of N entries
+    //   the noun postings    int[N + 1] start, then the synsets of noun i,
+    //                        increasing, in start[i] ... start[i + 1] - 1
+    // A string table is int[n + 1] end offsets into the UTF-8 bytes of
+    // the strings that follow, padded with zeros to a multiple of four
+    public void save(String file) {
+        if (file == null) throw new NullPointerException();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(V);
+            out.writeInt(g.E());
+            out.writeInt(dictionary.size());
+
+            writeInts(out, g.offsets);
+            writeInts(out, g.targets);
+            writeStrings(out, synsetArray);
+            writeStrings(out, dictionary.nouns);
+            writeInts(out, dictionary.start);
+            writeInts(out, dictionary.postings);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + file, e);
+        }
+    }
 
-        In inHypernyms = new In(hypernyms);
-        while ((line = inHypernyms.readLine()) != null && !line.trim().isEmpty()) {
-            String[] numbers = line.split(",");
-            int v = Integer.parseInt(numbers[0]);
-            for (String number : numbers) {
-                int w = Integer.parseInt(number);
-                if (v != w) g.addEdge(v, w);
+    // a WordNet from a snapshot written by save()
+    public static WordNet load(String file) {
+        return load(file, false);
+    }
+
+    // as above, building an AncestorIndex if index is set
+    public static WordNet load(String file, boolean index) {
+        if (file == null) throw new NullPointerException();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) throw new IllegalArgumentException(file + " is not a WordNet snapshot");
+            int version = in.getInt();
+            if (version != VERSION) throw new IllegalArgumentException("unsupported snapshot version " + version);
+
+            int V = in.getInt();
+            int E = in.getInt();
+            int N = in.getInt();
+            int[] offsets = readInts(in, V + 1);
+            int[] targets = readInts(in, E);
+            String[] synsetArray = readStrings(in, V);
+            String[] nouns = readStrings(in, N);
+            int[] start = readInts(in, N + 1);
+            int[] postings = readInts(in, start[N]);
+
+            return new WordNet(synsetArray, new NounDictionary(nouns, start, postings, V),
+                               new CompactDigraph(offsets, targets), index);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open " + file, e);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(file + " is truncated", e);
+        } catch (NegativeArraySizeException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(file + " is corrupt", e);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        for (int x : a) out.writeInt(x);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.writeInt(0);
+        for (String s : strings) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            bytes.write(b, 0, b.length);
+            out.writeInt(bytes.size());
+        }
+        while (bytes.size() % 4 != 0) bytes.write(0);
+        bytes.writeTo(out);
+    }
+
+    // the next n ints of in, in one bulk copy; a count past the end of in
+    // is refused before anything is allocated for it
+    private static int[] readInts(ByteBuffer in, int n) {
+        if (4L * n > in.remaining()) throw new BufferUnderflowException();
+        int[] a = new int[n];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + 4 * n);
+        return a;
+    }
+
+    private static String[] readStrings(ByteBuffer in, int n) {
+        int[] ends = readInts(in, n + 1);
+        if (ends[n] > in.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[ends[n]];
+        in.get(bytes);
+        in.position((in.position() + 3) & ~3);
+
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = new String(bytes, ends[i], ends[i + 1] - ends[i], StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    // the bytes of a whole input file
+    private static byte[] read(String file) {
+        try {
+            return Files.readAllBytes(Paths.get(file));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open " + file, e);
+        }
+    }
+
+    // index of the '\n' ending the line that starts at i, or b.length
+    private static int lineEnd(byte[] b, int i) {
+        while (i < b.length && b[i] != '\n') i++;
+        return i;
+    }
+
+    // index of the first c in b[lo, hi), or hi
+    private static int indexOf(byte[] b, char c, int lo, int hi) {
+        while (lo < hi && b[lo] != c) lo++;
+        return lo;
+    }
+
+    // a line of white space only ends the file, as an empty trimmed line did
+    private static boolean blank(byte[] b, int lo, int hi) {
+        for (int i = lo; i < hi; i++) {
+            if (b[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    // the nonnegative decimal number in b[lo, hi)
+    private static int parseInt(byte[] b, int lo, int hi) {
+        if (lo == hi) throw new IllegalArgumentException("missing synset id");
+        int n = 0;
+        for (int i = lo; i < hi; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9 || n > (Integer.MAX_VALUE - digit) / 10) {
+                throw new IllegalArgumentException("bad synset id: " + new String(b, lo, hi - lo, StandardCharsets.UTF_8));
             }
+            n = 10 * n + digit;
         }
+        return n;
+    }
 
-        // The constructor should throw a java.lang.IllegalArgumentException if the input does not
-        // correspond to a rooted DAG.
-        int numRoot = 0;
-        for (int v = 0; v < V; v++) {
-            if (!g.adj(v).iterator().hasNext()) numRoot++;
+    // synset v is line v of the file, up to the first blank line: an id,
+    // the space-separated nouns of the synset, and a gloss. The nouns are
+    // cut exactly as split(" ") on the second field would cut them
+    private void readSynsets(byte[] b) {
+        synsetArray = new String[1024];
+        V = 0;
+
+        // every noun read, with the synset it was read in
+        String[] nouns = new String[1024];
+        int[] synsets = new int[1024];
+        int n = 0;
+
+        for (int i = 0, next; i < b.length; i = next) {
+            int end = lineEnd(b, i);
+            next = end + 1;
+            if (end > i && b[end - 1] == '\r') end--;
+            if (blank(b, i, end)) break;
+
+            int lo = indexOf(b, ',', i, end) + 1;
+            if (lo > end) throw new IllegalArgumentException("no nouns in synset " + V);
+            int hi = indexOf(b, ',', lo, end);
+
+            int v = V++;
+            if (v == synsetArray.length) synsetArray = Arrays.copyOf(synsetArray, 2 * v);
+            synsetArray[v] = new String(b, lo, hi - lo, StandardCharsets.UTF_8);
+
+            // trailing separators produce no nouns, unless the field is empty
+            int last = hi;
+            while (last > lo && b[last - 1] == ' ') last--;
+            if (last == lo && hi > lo) continue;
+            for (int start = lo; ; ) {
+                int space = indexOf(b, ' ', start, last);
+                if (n == nouns.length) {
+                    nouns = Arrays.copyOf(nouns, 2 * n);
+                    synsets = Arrays.copyOf(synsets, 2 * n);
+                }
+                nouns[n] = new String(b, start, space - start, StandardCharsets.UTF_8);
+                synsets[n] = v;
+                n++;
+                if (space == last) break;
+                start = space + 1;
+            }
         }
-        if (numRoot != 1) throw new IllegalArgumentException();
+        synsetArray = Arrays.copyOf(synsetArray, V);
+        dictionary = new NounDictionary(nouns, synsets, n);
+    }
+
+    // the position of noun in the dictionary; the synsets it is in are
+    // dictionary.postings[start[i]] ... [start[i + 1] - 1]
+    private int find(String noun) {
+        if (noun == null) throw new NullPointerException();
+        int i = dictionary.find(noun);
+        if (i < 0) throw new IllegalArgumentException();
+        return i;
+    }
 
-        sap = new SAP(g);
+    // the synsets noun is in, as a new array
+    private int[] synsetsOf(String noun) {
+        return dictionary.synsets(find(noun));
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return words;
+        return dictionary.nouns();
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
         if (word == null) throw new NullPointerException();
-        return words.contains(word);
+        return dictionary.contains(word);
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) throw new IllegalArgumentException();
-
-        return sap.length(map.get(nounA), map.get(nounB));
+        int a = find(nounA);
+        int b = find(nounB);
+        int[] p = dictionary.postings;
+        int[] start = dictionary.start;
+        if (index != null) return index.length(p, start[a], start[a + 1], p, start[b], start[b + 1]);
+        return sap.length(p, start[a], start[a + 1], p, start[b], start[b + 1]);
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) throw new IllegalArgumentException();
+        int a = find(nounA);
+        int b = find(nounB);
+        int[] p = dictionary.postings;
+        int[] start = dictionary.start;
+        if (index != null) return synsetArray[index.ancestor(p, start[a], start[a + 1], p, start[b], start[b + 1])];
+        return synsetArray[sap.ancestor(p, start[a], start[a + 1], p, start[b], start[b + 1])];
+    }
+
+    // distances[i][j] is distance(nouns[i], nouns[j]), for every i and j, from
+    // one search per noun (or the index, if there is one) rather than one
+    // per pair
+    public int[][] distances(String[] nouns) {
+        if (nouns == null) throw new NullPointerException();
+
+        int n = nouns.length;
+        int[][] sets = new int[n][];
+        for (int i = 0; i < n; i++) sets[i] = synsetsOf(nouns[i]);
+        if (index == null) return sap.lengths(sets);
+
+        int[][] distances = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = index.length(sets[i], sets[j]);
+                distances[j][i] = distances[i][j];
+            }
+        }
+        return distances;
+    }
 
-        return synsetArray[sap.ancestor(map.get(nounA), map.get(nounB))];
+    // the index distance() and sap() use; null if there is none
+    public AncestorIndex index() {
+        return index;
     }
 
     // do unit testing of this class
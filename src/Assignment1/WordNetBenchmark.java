@@ -0,0 +1,210 @@
+/*************************************************************************
+ *  Compilation:  javac -d . ../common/Benchmark.java WordNetBenchmark.java
+ *  Execution:    java WordNetBenchmark [synsets.txt hypernyms.txt]
+ *  Dependencies: ../common/Benchmark.java SAP.java WordNet.java
+ *                Outcast.java AncestorIndex.java CompactDigraph.java
+ *                SAPMetrics.java Digraph.java In.java StdRandom.java
+ *
+ *
+ *  Micro-benchmarks for the SAP and WordNet hot paths: SAP.length() and
+ *  SAP.ancestor() on random vertex pairs of digraph1.txt ... digraph6.txt
+ *  and of generated rooted DAGs of 100k and 1M vertices, and, when the
+ *  WordNet files are present, WordNet construction, loading it back from
+ *  a snapshot, distance() on random noun pairs, on a skewed, repetitive
+ *  mix of them and with the ancestor index (whose size and build time are
+ *  printed), and Outcast.outcast() on the outcast*.txt files and on
+ *  batches of 200 random nouns.
+ *
+ *  Each is run by Benchmark.measure(), which prints time and allocation
+ *  per operation; set-up work (picking the next query) is not counted.
+ *  With -Dalgs4.metrics=true the SAPMetrics summary of all queries is
+ *  printed at the end, and the timings include the cost of collecting it.
+ *
+ *************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+
+public class WordNetBenchmark {
+
+    // queries per timed run on the small graphs; fewer on the large ones
+    private static final int QUERIES = 1000;
+
+    // rooted DAG on V vertices: every vertex but the root 0 points to one
+    // or two vertices with a smaller id, mostly nearby ones
+    private static Digraph randomDAG(int V) {
+        Digraph G = new Digraph(V);
+        for (int v = 1; v < V; v++) {
+            int edges = StdRandom.bernoulli(0.3) ? 2 : 1;
+            for (int e = 0; e < edges; e++) {
+                int w = v - 1 - StdRandom.uniform(Math.min(v, 1 + v / 8));
+                G.addEdge(v, w);
+            }
+        }
+        return G;
+    }
+
+    // SAP queries on random vertex pairs of G, in runs of the given size
+    private static void benchmark(String input, Digraph G, final int queries) {
+        final SAP sap = new SAP(G);
+        final int V = G.V();
+        final int[] v = new int[queries];
+        final int[] w = new int[queries];
+
+        Benchmark.measure(input, "SAP.length", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < queries; i++) {
+                    v[i] = StdRandom.uniform(V);
+                    w[i] = StdRandom.uniform(V);
+                }
+            }
+            int run() {
+                for (int i = 0; i < queries; i++) sap.length(v[i], w[i]);
+                return queries;
+            }
+        });
+
+        Benchmark.measure(input, "SAP.ancestor", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < queries; i++) {
+                    v[i] = StdRandom.uniform(V);
+                    w[i] = StdRandom.uniform(V);
+                }
+            }
+            int run() {
+                for (int i = 0; i < queries; i++) sap.ancestor(v[i], w[i]);
+                return queries;
+            }
+        });
+    }
+
+    private static void wordnet(final String synsets, final String hypernyms) {
+        Benchmark.measure("WordNet", "construct", new Benchmark() {
+            int run() {
+                new WordNet(synsets, hypernyms);
+                return 1;
+            }
+        });
+
+        final WordNet wordnet = new WordNet(synsets, hypernyms);
+        final File snapshot;
+        try {
+            snapshot = File.createTempFile("wordnet", ".snapshot");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        snapshot.deleteOnExit();
+        wordnet.save(snapshot.getPath());
+        Benchmark.measure("WordNet", "load snapshot", new Benchmark() {
+            int run() {
+                WordNet.load(snapshot.getPath());
+                return 1;
+            }
+        });
+
+        int n = 0;
+        for (String noun : wordnet.nouns()) n++;
+        final String[] nouns = new String[n];
+        n = 0;
+        for (String noun : wordnet.nouns()) nouns[n++] = noun;
+
+        final String[] a = new String[QUERIES];
+        final String[] b = new String[QUERIES];
+        Benchmark.measure("WordNet", "distance", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < QUERIES; i++) {
+                    a[i] = nouns[StdRandom.uniform(nouns.length)];
+                    b[i] = nouns[StdRandom.uniform(nouns.length)];
+                }
+            }
+            int run() {
+                for (int i = 0; i < QUERIES; i++) wordnet.distance(a[i], b[i]);
+                return QUERIES;
+            }
+        });
+
+        // the repetitive workload the result cache is for: nine queries in
+        // ten between nouns of a hot set of a hundred
+        final String[] hot = new String[100];
+        for (int i = 0; i < hot.length; i++) hot[i] = nouns[StdRandom.uniform(nouns.length)];
+        Benchmark.measure("WordNet", "distance (skewed)", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < QUERIES; i++) {
+                    String[] from = StdRandom.bernoulli(0.9) ? hot : nouns;
+                    a[i] = from[StdRandom.uniform(from.length)];
+                    b[i] = from[StdRandom.uniform(from.length)];
+                }
+            }
+            int run() {
+                for (int i = 0; i < QUERIES; i++) wordnet.distance(a[i], b[i]);
+                return QUERIES;
+            }
+        });
+
+        final WordNet indexed = new WordNet(synsets, hypernyms, true);
+        System.out.printf("%-16s %s\n", "WordNet", indexed.index());
+        Benchmark.measure("WordNet", "distance (indexed)", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < QUERIES; i++) {
+                    a[i] = nouns[StdRandom.uniform(nouns.length)];
+                    b[i] = nouns[StdRandom.uniform(nouns.length)];
+                }
+            }
+            int run() {
+                for (int i = 0; i < QUERIES; i++) indexed.distance(a[i], b[i]);
+                return QUERIES;
+            }
+        });
+
+        final Outcast outcast = new Outcast(wordnet);
+        String[] files = {"outcast5.txt", "outcast8.txt", "outcast11.txt"};
+        for (String file : files) {
+            final String[] words = new In(file).readAllStrings();
+            Benchmark.measure(file, "Outcast.outcast", new Benchmark() {
+                int run() {
+                    outcast.outcast(words);
+                    return 1;
+                }
+            });
+        }
+
+        final String[] batch = new String[200];
+        Benchmark.measure("200 nouns", "Outcast.outcast", new Benchmark() {
+            void setUp() {
+                for (int i = 0; i < batch.length; i++) batch[i] = nouns[StdRandom.uniform(nouns.length)];
+            }
+            int run() {
+                outcast.outcast(batch);
+                return 1;
+            }
+        });
+    }
+
+    public static void main(String[] args)
+    {
+        String synsets = "synsets.txt";
+        String hypernyms = "hypernyms.txt";
+        if (args.length == 2) {
+            synsets = args[0];
+            hypernyms = args[1];
+        }
+
+        Benchmark.header("input");
+
+        for (int i = 1; i <= 6; i++) {
+            String file = "digraph" + i + ".txt";
+            benchmark(file, new Digraph(new In(file)), QUERIES);
+        }
+        benchmark("random 100k", randomDAG(100000), QUERIES / 10);
+        benchmark("random 1M", randomDAG(1000000), QUERIES / 100);
+
+        if (new File(synsets).exists() && new File(hypernyms).exists()) {
+            wordnet(synsets, hypernyms);
+        } else {
+            System.out.printf("%s or %s not found, skipping WordNet and Outcast\n", synsets, hypernyms);
+        }
+
+        if (SAPMetrics.isEnabled()) System.out.println(SAPMetrics.snapshot());
+    }
+
+}
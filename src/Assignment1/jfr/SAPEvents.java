@@ -0,0 +1,58 @@
+/*************************************************************************
+ *  Compilation:  javac -d . jfr/SAPEvents.java  (from the directory above;
+ *                JDK 11 or later)
+ *  Execution:    none
+ *  Dependencies: SAPMetrics.java
+ *
+ *
+ *  The JDK Flight Recorder side of SAPMetrics: every query it sees while
+ *  metrics are on becomes an algs4.SAPQuery event. Kept out of the
+ *  assignment directory because jdk.jfr only exists from JDK 11 on;
+ *  SAPMetrics finds this class by name on the class path when it is
+ *  enabled, and simply records no events if it is not there.
+ *
+ *************************************************************************/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public class SAPEvents implements SAPMetrics.Recorder {
+
+    @Name("algs4.SAPQuery")
+    @Label("SAP Query")
+    @Category("algs4")
+    @Description("A shortest ancestral path query")
+    static class QueryEvent extends Event {
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+        @Label("Repeat")
+        boolean repeat;
+
+        @Label("Vertices Visited")
+        int visited;
+
+        @Label("Queue High-Water Mark")
+        int queueHighWater;
+
+        @Label("Traversal Time")
+        @Timespan
+        long traversal;
+    }
+
+    public void query(boolean cacheHit, boolean repeat, int visited, int queueHighWater, long nanos) {
+        QueryEvent event = new QueryEvent();
+        if (event.shouldCommit()) {
+            event.cacheHit = cacheHit;
+            event.repeat = repeat;
+            event.visited = visited;
+            event.queueHighWater = queueHighWater;
+            event.traversal = nanos;
+            event.commit();
+        }
+    }
+}
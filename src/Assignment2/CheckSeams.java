@@ -0,0 +1,586 @@
+/*************************************************************************
+ *  Compilation:  javac CheckSeams.java
+ *  Execution:    java CheckSeams [trials]
+ *  Dependencies: SeamCarver.java MappedSeamCarver.java SeamCarverMetrics.java
+ *                SCUtility.java Picture.java Digraph.java Topological.java
+ *                Stack.java StdRandom.java
+ *
+ *
+ *  Check that SeamCarver.findVerticalSeam() and findHorizontalSeam() agree
+ *  with the original shortest-path formulation: a digraph of W*H+2
+ *  vertices relaxed in topological order. Runs over the bundled PNGs and
+ *  random pictures with few distinct colours (so that ties are common).
+ *  Random pictures are then carved seam by seam, checking after every
+ *  removal that the energies and seams match a fresh SeamCarver built
+ *  from the carved picture. Finally a wide and a tall picture are carved
+ *  with and without a ForkJoinPool, which must give the same seams, and
+ *  removeVerticalSeams(k) and removeHorizontalSeams(k) must match k single
+ *  removals. For the approximate batch mode the total energy left in the
+ *  carved picture is printed relative to the exact result (higher means
+ *  less content was removed). resize() and resizeGreedy() must reach the
+ *  target size; the energy they remove is summed over all pictures and
+ *  printed next to removing all columns, then all rows, and so is that of
+ *  taking 100 columns and 50 rows off HJocean.png, with the time it took. Seam insertion
+ *  must give a picture of the right size in which every row (column) of
+ *  the original appears in order. MappedSeamCarver, with strips of a few
+ *  rows, must carve every random picture exactly like SeamCarver. A band
+ *  search around a random seam must return the full seam when the band
+ *  covers the picture, and otherwise a seam inside the band that costs
+ *  no less than the full one. The same goes for coarse-to-fine seams on
+ *  larger random pictures, with their corridor in place of the band; how
+ *  much more energy they remove from HJocean.png than exact seams is
+ *  printed for a few corridor widths. SeamCarverMetrics must see every
+ *  phase of a carve, and nothing while it is off.
+ *
+ *************************************************************************/
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public class CheckSeams {
+
+    private static Stack<Integer> adj(int x, int width, int num) {
+        Stack<Integer> s = new Stack<Integer>();
+
+        if (x == num + 1) {
+            for (int i = 0; i < width; i++) {
+                s.push(i);
+            }
+            return s;
+        }
+
+        if (x == num) return s;
+
+        // last row
+        if (x >= num - width) {
+            s.push(num);
+            return s;
+        }
+
+        // left edge
+        if (x % width == 0) {
+            s.push(x + width);
+            s.push(x + width + 1);
+            return s;
+        }
+
+        // right edge
+        if (x % width == width - 1) {
+            s.push(x + width - 1);
+            s.push(x + width);
+            return s;
+        }
+
+        s.push(x + width - 1);
+        s.push(x + width);
+        s.push(x + width + 1);
+
+        return s;
+    }
+
+    // the graph-based vertical seam, weight[y][x] is the energy of (x, y)
+    private static int[] graphSeam(double[][] weight) {
+        int height = weight.length;
+        int width = weight[0].length;
+        int num = width * height;
+
+        Digraph G = new Digraph(num + 2);
+
+        for (int i = 0; i < num + 2; i++) {
+            for (int j : adj(i, width, num)) G.addEdge(i, j);
+        }
+
+        Topological topological = new Topological(G);
+
+        double[] distTo = new double[num + 2];
+        int[] edgeTo = new int[num + 2];
+
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        distTo[num + 1] = 0.0;
+
+        for (int v : topological.order()) {
+            for (int e : G.adj(v)) {
+                double w = (e >= num) ? 0 : weight[e / width][e % width];
+                if (distTo[e] > distTo[v] + w) {
+                    distTo[e] = distTo[v] + w;
+                    edgeTo[e] = v;
+                }
+            }
+        }
+
+        int[] path = new int[height];
+
+        int j = num;
+        Stack<Integer> s = new Stack<Integer>();
+        while (edgeTo[j] != num + 1) {
+            j = edgeTo[j];
+            s.push(j % width);
+        }
+
+        for (int i = 0; i < height; i++) {
+            path[i] = s.pop();
+        }
+
+        return path;
+    }
+
+    private static double[][] energies(SeamCarver sc, boolean transposed) {
+        int width = transposed ? sc.height() : sc.width();
+        int height = transposed ? sc.width() : sc.height();
+        double[][] weight = new double[height][width];
+
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                weight[h][w] = transposed ? sc.energy(h, w) : sc.energy(w, h);
+            }
+        }
+        return weight;
+    }
+
+    // random picture drawing each channel from only a few levels
+    private static Picture coarsePicture(int W, int H, int levels) {
+        Picture p = new Picture(W, H);
+        for (int i = 0; i < W; i++)
+            for (int j = 0; j < H; j++) {
+                int r = StdRandom.uniform(levels) * (255 / levels);
+                int g = StdRandom.uniform(levels) * (255 / levels);
+                int b = StdRandom.uniform(levels) * (255 / levels);
+                p.set(i, j, new Color(r, g, b));
+            }
+        return p;
+    }
+
+    private static boolean check(String name, Picture picture) {
+        SeamCarver sc = new SeamCarver(picture);
+
+        int[] vertical = sc.findVerticalSeam();
+        int[] horizontal = sc.findHorizontalSeam();
+
+        boolean ok = true;
+        if (!Arrays.equals(vertical, graphSeam(energies(sc, false)))) {
+            System.out.printf("%s: vertical seams differ\n", name);
+            ok = false;
+        }
+        if (!Arrays.equals(horizontal, graphSeam(energies(sc, true)))) {
+            System.out.printf("%s: horizontal seams differ\n", name);
+            ok = false;
+        }
+        return ok;
+    }
+
+    // remove random seams, comparing against a carver rebuilt from scratch
+    private static boolean carve(String name, Picture picture) {
+        SeamCarver sc = new SeamCarver(picture);
+
+        while (sc.width() > 2 && sc.height() > 2) {
+            if (StdRandom.uniform(2) == 0) sc.removeHorizontalSeam(sc.findHorizontalSeam());
+            else                           sc.removeVerticalSeam(sc.findVerticalSeam());
+
+            SeamCarver fresh = new SeamCarver(sc.picture());
+            if (!Arrays.deepEquals(energies(sc, false), energies(fresh, false))) {
+                System.out.printf("%s: stale energies at %dx%d\n", name, sc.width(), sc.height());
+                return false;
+            }
+            if (!Arrays.equals(sc.findVerticalSeam(), graphSeam(energies(fresh, false)))) {
+                System.out.printf("%s: vertical seams differ at %dx%d\n", name, sc.width(), sc.height());
+                return false;
+            }
+            if (!Arrays.equals(sc.findHorizontalSeam(), graphSeam(energies(fresh, true)))) {
+                System.out.printf("%s: horizontal seams differ at %dx%d\n", name, sc.width(), sc.height());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // carve with and without a pool, the seams must not depend on it
+    private static boolean parallel(String name, Picture picture, ForkJoinPool pool) {
+        SeamCarver serial = new SeamCarver(picture);
+        SeamCarver sc = new SeamCarver(picture, pool);
+
+        for (int i = 0; i < 8; i++) {
+            int[] vertical = sc.findVerticalSeam();
+            int[] horizontal = sc.findHorizontalSeam();
+            if (!Arrays.equals(vertical, serial.findVerticalSeam())
+                    || !Arrays.equals(horizontal, serial.findHorizontalSeam())) {
+                System.out.printf("%s: parallel seams differ\n", name);
+                return false;
+            }
+            if (i % 2 == 0) {
+                sc.removeVerticalSeam(vertical);
+                serial.removeVerticalSeam(vertical);
+            } else {
+                sc.removeHorizontalSeam(horizontal);
+                serial.removeHorizontalSeam(horizontal);
+            }
+        }
+        return true;
+    }
+
+    private static boolean samePicture(Picture a, Picture b) {
+        if (a.width() != b.width() || a.height() != b.height()) return false;
+
+        for (int i = 0; i < a.width(); i++)
+            for (int j = 0; j < a.height(); j++)
+                if (!a.get(i, j).equals(b.get(i, j))) return false;
+        return true;
+    }
+
+    private static double totalEnergy(SeamCarver sc) {
+        double total = 0;
+        for (int i = 0; i < sc.width(); i++)
+            for (int j = 0; j < sc.height(); j++)
+                total += sc.energy(i, j);
+        return total;
+    }
+
+    // batch removals against single ones: the batch result must be the same
+    // picture for seamsPerPass == 1, otherwise returns its total energy
+    // relative to the single removals, or -1 if it has the wrong size
+    private static double batch(Picture picture, int cols, int rows, int seamsPerPass) {
+        SeamCarver single = new SeamCarver(picture);
+        for (int i = 0; i < cols; i++) single.removeVerticalSeam(single.findVerticalSeam());
+        for (int i = 0; i < rows; i++) single.removeHorizontalSeam(single.findHorizontalSeam());
+
+        SeamCarver sc = new SeamCarver(picture);
+        sc.removeVerticalSeams(cols, seamsPerPass);
+        sc.removeHorizontalSeams(rows, seamsPerPass);
+
+        if (sc.width() != single.width() || sc.height() != single.height()) return -1;
+        if (seamsPerPass == 1) return samePicture(single.picture(), sc.picture()) ? 1 : -1;
+        return totalEnergy(sc) / totalEnergy(single);
+    }
+
+    // total energy of the seams removed taking all columns, then all rows
+    private static double columnsFirst(SeamCarver sc, int cols, int rows) {
+        double total = 0;
+        for (int i = 0; i < cols + rows; i++) {
+            boolean vertical = i < cols;
+            int[] seam = vertical ? sc.findVerticalSeam() : sc.findHorizontalSeam();
+            for (int j = 0; j < seam.length; j++)
+                total += vertical ? sc.energy(seam[j], j) : sc.energy(j, seam[j]);
+            if (vertical) sc.removeVerticalSeam(seam);
+            else          sc.removeHorizontalSeam(seam);
+        }
+        return total;
+    }
+
+    // energy removed by resize(), resizeGreedy() and columns-first
+    private static double[] removed = new double[3];
+
+    private static boolean order(String name, Picture picture, int cols, int rows) {
+        int W = picture.width() - cols;
+        int H = picture.height() - rows;
+
+        SeamCarver optimal = new SeamCarver(picture);
+        SeamCarver greedy = new SeamCarver(picture);
+        removed[0] += optimal.resize(W, H);
+        removed[1] += greedy.resizeGreedy(W, H);
+        removed[2] += columnsFirst(new SeamCarver(picture), cols, rows);
+
+        if (optimal.width() != W || optimal.height() != H || greedy.width() != W || greedy.height() != H) {
+            System.out.printf("%s: resize to %dx%d gave the wrong size\n", name, W, H);
+            return false;
+        }
+        return true;
+    }
+
+    // insert seams and check every original line is a subsequence of its
+    // line in the enlarged picture
+    private static boolean insert(String name, Picture picture, int cols, int rows) {
+        SeamCarver sc = new SeamCarver(picture);
+        sc.insertVerticalSeams(cols);
+        sc.insertHorizontalSeams(rows);
+        Picture wide = sc.picture();
+
+        if (wide.width() != picture.width() + cols || wide.height() != picture.height() + rows) {
+            System.out.printf("%s: insertion gave the wrong size\n", name);
+            return false;
+        }
+
+        // the columns are inserted first, so check the rows against that
+        // intermediate picture and its columns against the final one
+        SeamCarver narrow = new SeamCarver(picture);
+        narrow.insertVerticalSeams(cols);
+        Picture mid = narrow.picture();
+        for (int j = 0; j < picture.height(); j++) {
+            int x = 0;
+            for (int i = 0; i < mid.width() && x < picture.width(); i++) {
+                if (mid.get(i, j).equals(picture.get(x, j))) x++;
+            }
+            if (x < picture.width()) {
+                System.out.printf("%s: row %d lost pixels on insertion\n", name, j);
+                return false;
+            }
+        }
+        for (int i = 0; i < mid.width(); i++) {
+            int y = 0;
+            for (int j = 0; j < wide.height() && y < mid.height(); j++) {
+                if (wide.get(i, j).equals(mid.get(i, y))) y++;
+            }
+            if (y < mid.height()) {
+                System.out.printf("%s: column %d lost pixels on insertion\n", name, i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a random seam of lines cells in lines of cells cells
+    private static int[] randomSeam(int lines, int cells) {
+        int[] seam = new int[lines];
+        seam[0] = StdRandom.uniform(cells);
+        for (int l = 1; l < lines; l++) {
+            seam[l] = Math.max(0, Math.min(cells - 1, seam[l - 1] + StdRandom.uniform(-1, 2)));
+        }
+        return seam;
+    }
+
+    private static double seamCost(SeamCarver sc, int[] seam, boolean vertical) {
+        double total = 0;
+        for (int l = 0; l < seam.length; l++)
+            total += vertical ? sc.energy(seam[l], l) : sc.energy(l, seam[l]);
+        return total;
+    }
+
+    // band searches around random seams against the full search
+    private static boolean banded(String name, Picture picture) {
+        SeamCarver sc = new SeamCarver(picture);
+        int W = picture.width();
+        int H = picture.height();
+
+        int[] near = randomSeam(H, W);
+        if (!Arrays.equals(sc.findVerticalSeam(near, W), sc.findVerticalSeam())) {
+            System.out.printf("%s: vertical band seam differs\n", name);
+            return false;
+        }
+        near = randomSeam(W, H);
+        if (!Arrays.equals(sc.findHorizontalSeam(near, H), sc.findHorizontalSeam())) {
+            System.out.printf("%s: horizontal band seam differs\n", name);
+            return false;
+        }
+
+        for (int radius = 0; radius < 3; radius++) {
+            near = randomSeam(H, W);
+            int[] seam = sc.findVerticalSeam(near, radius);
+            for (int y = 0; y < H; y++) {
+                if (Math.abs(seam[y] - near[y]) > radius || (y > 0 && Math.abs(seam[y] - seam[y - 1]) > 1)) {
+                    System.out.printf("%s: vertical band seam leaves the band\n", name);
+                    return false;
+                }
+            }
+            if (seamCost(sc, seam, true) < seamCost(sc, sc.findVerticalSeam(), true)) {
+                System.out.printf("%s: vertical band seam beats the full one\n", name);
+                return false;
+            }
+
+            near = randomSeam(W, H);
+            seam = sc.findHorizontalSeam(near, radius);
+            for (int x = 0; x < W; x++) {
+                if (Math.abs(seam[x] - near[x]) > radius || (x > 0 && Math.abs(seam[x] - seam[x - 1]) > 1)) {
+                    System.out.printf("%s: horizontal band seam leaves the band\n", name);
+                    return false;
+                }
+            }
+            if (seamCost(sc, seam, false) < seamCost(sc, sc.findHorizontalSeam(), false)) {
+                System.out.printf("%s: horizontal band seam beats the full one\n", name);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // coarse-to-fine seams: exact with a corridor as wide as the picture,
+    // otherwise valid seams no cheaper than the exact ones, also while the
+    // pyramid follows removals in both directions
+    private static boolean coarseToFine(String name, Picture picture) {
+        SeamCarver sc = new SeamCarver(picture);
+        int wide = Math.max(picture.width(), picture.height());
+
+        for (int i = 0; i < 12; i++) {
+            boolean vertical = StdRandom.uniform(3) > 0;
+            int[] exact = vertical ? sc.findVerticalSeam() : sc.findHorizontalSeam();
+            int[] full = vertical ? sc.approximateVerticalSeam(wide) : sc.approximateHorizontalSeam(wide);
+            if (!Arrays.equals(exact, full)) {
+                System.out.printf("%s: coarse-to-fine seam with a full corridor differs\n", name);
+                return false;
+            }
+
+            int corridor = 1 + StdRandom.uniform(4);
+            int[] seam = vertical ? sc.approximateVerticalSeam(corridor) : sc.approximateHorizontalSeam(corridor);
+            if (seamCost(sc, seam, vertical) < seamCost(sc, exact, vertical)) {
+                System.out.printf("%s: coarse-to-fine seam beats the exact one\n", name);
+                return false;
+            }
+            try {
+                if (vertical) sc.removeVerticalSeam(seam);
+                else          sc.removeHorizontalSeam(seam);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%s: coarse-to-fine seam is not a seam\n", name);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // energy of the seams removed, as a fraction of the exact ones, when k
+    // vertical seams are found coarse to fine with the given corridor
+    private static double coarseToFineEnergy(Picture picture, int k, int corridor) {
+        SeamCarver exact = new SeamCarver(picture);
+        SeamCarver sc = new SeamCarver(picture);
+        double exactTotal = 0;
+        double total = 0;
+        for (int i = 0; i < k; i++) {
+            int[] seam = exact.findVerticalSeam();
+            exactTotal += seamCost(exact, seam, true);
+            exact.removeVerticalSeam(seam);
+
+            seam = sc.approximateVerticalSeam(corridor);
+            total += seamCost(sc, seam, true);
+            sc.removeVerticalSeam(seam);
+        }
+        return total / exactTotal;
+    }
+
+    // carve with SeamCarver and MappedSeamCarver side by side, comparing
+    // energies and seams after every removal
+    private static boolean mapped(String name, Picture picture) {
+        SeamCarver sc = new SeamCarver(picture);
+        try (MappedSeamCarver msc = new MappedSeamCarver(picture, null, 1 + StdRandom.uniform(4))) {
+            while (sc.width() > 1 && sc.height() > 1) {
+                if (!Arrays.deepEquals(energies(sc, false), energies(msc))) {
+                    System.out.printf("%s: mapped energies differ at %dx%d\n", name, sc.width(), sc.height());
+                    return false;
+                }
+                int[] vertical = sc.findVerticalSeam();
+                int[] horizontal = sc.findHorizontalSeam();
+                if (!Arrays.equals(vertical, msc.findVerticalSeam())
+                        || !Arrays.equals(horizontal, msc.findHorizontalSeam())) {
+                    System.out.printf("%s: mapped seams differ at %dx%d\n", name, sc.width(), sc.height());
+                    return false;
+                }
+                if (StdRandom.uniform(2) == 0) {
+                    sc.removeHorizontalSeam(horizontal);
+                    msc.removeHorizontalSeam(horizontal);
+                } else {
+                    sc.removeVerticalSeam(vertical);
+                    msc.removeVerticalSeam(vertical);
+                }
+            }
+            return samePicture(sc.picture(), msc.picture());
+        }
+    }
+
+    private static double[][] energies(MappedSeamCarver sc) {
+        double[][] weight = new double[sc.height()][sc.width()];
+
+        for (int h = 0; h < sc.height(); h++) {
+            for (int w = 0; w < sc.width(); w++) {
+                weight[h][w] = sc.energy(w, h);
+            }
+        }
+        return weight;
+    }
+
+    // SeamCarverMetrics must see every phase of a carve with runs of
+    // removals in both directions (the second run transposes), and nothing
+    // while it is off
+    private static boolean metrics(Picture picture) {
+        SeamCarverMetrics.reset();
+        SeamCarverMetrics.enable();
+        SeamCarver sc = new SeamCarver(picture);
+        for (int i = 0; i < 4; i++) sc.removeVerticalSeam(sc.findVerticalSeam());
+        for (int i = 0; i < 4; i++) sc.removeHorizontalSeam(sc.findHorizontalSeam());
+        SeamCarverMetrics.disable();
+
+        SeamCarverMetrics.Snapshot snapshot = SeamCarverMetrics.snapshot();
+        for (int phase = SeamCarverMetrics.ENERGY; phase <= SeamCarverMetrics.REMOVAL; phase++) {
+            if (snapshot.count(phase) == 0) {
+                System.out.print("metrics missed a phase:\n" + snapshot);
+                return false;
+            }
+        }
+
+        new SeamCarver(picture).findVerticalSeam();
+        if (SeamCarverMetrics.snapshot().count(SeamCarverMetrics.ENERGY) != snapshot.count(SeamCarverMetrics.ENERGY)) {
+            System.out.println("metrics counted work while disabled");
+            return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args)
+    {
+        int trials = 200;
+        if (args.length > 0) trials = Integer.parseInt(args[0]);
+
+        String[] files = {"3x7.png", "4x6.png", "5x6.png", "6x5.png", "7x3.png",
+                          "10x12.png", "12x10.png", "HJocean.png"};
+
+        int failed = 0;
+        for (String file : files) {
+            if (!check(file, new Picture(file))) failed++;
+        }
+
+        for (int t = 0; t < trials; t++) {
+            int W = StdRandom.uniform(2, 40);
+            int H = StdRandom.uniform(2, 40);
+            Picture p;
+            if (t % 2 == 0) p = SCUtility.randomPicture(W, H);
+            else            p = coarsePicture(W, H, 1 + StdRandom.uniform(3));
+            if (!check(W + "x" + H + " random", p)) failed++;
+            if (!carve(W + "x" + H + " random", p)) failed++;
+            if (batch(p, W / 2, H / 2, 1) != 1) {
+                System.out.printf("%dx%d random: batch removal differs\n", W, H);
+                failed++;
+            }
+            if (!order(W + "x" + H + " random", p, (W - 1) / 2, (H - 1) / 2)) failed++;
+            if (!insert(W + "x" + H + " random", p, W - 1, (H + 1) / 2)) failed++;
+            if (!mapped(W + "x" + H + " random", p)) failed++;
+            if (!banded(W + "x" + H + " random", p)) failed++;
+        }
+
+        System.out.printf("energy removed relative to columns first: resize %.2f%%, greedy %.2f%%\n",
+                          100 * removed[0] / removed[2], 100 * removed[1] / removed[2]);
+
+        Picture ocean = new Picture("HJocean.png");
+        Arrays.fill(removed, 0);
+        long start = System.nanoTime();
+        if (!order("HJocean.png", ocean, 100, 50)) failed++;
+        System.out.printf("HJocean.png, 100 columns and 50 rows in %.3f s: resize %.2f%%, greedy %.2f%%\n",
+                          (System.nanoTime() - start) / 1e9, 100 * removed[0] / removed[2],
+                          100 * removed[1] / removed[2]);
+
+        int cols = ocean.width() / 4;
+        int rows = ocean.height() / 4;
+        for (int perPass = 2; perPass <= 32; perPass *= 4) {
+            System.out.printf("HJocean.png, %d seams per pass: %.1f%% of the exact energy left\n",
+                              perPass, 100 * batch(ocean, cols, rows, perPass));
+        }
+
+        for (int corridor = 1; corridor <= 16; corridor *= 4) {
+            System.out.printf("HJocean.png, coarse to fine, corridor %d: %.1f%% of the exact seam energy removed\n",
+                              corridor, 100 * coarseToFineEnergy(ocean, cols, corridor));
+        }
+
+        int large = Math.max(1, trials / 10);
+        for (int t = 0; t < large; t++) {
+            int W = StdRandom.uniform(40, 300);
+            int H = StdRandom.uniform(40, 300);
+            Picture p = coarsePicture(W, H, 1 + StdRandom.uniform(3));
+            if (!coarseToFine(W + "x" + H + " random", p)) failed++;
+        }
+
+        if (!metrics(coarsePicture(60, 40, 3))) failed++;
+
+        ForkJoinPool pool = new ForkJoinPool();
+        if (!parallel("6000x60 random", coarsePicture(6000, 60, 2), pool)) failed++;
+        if (!parallel("60x6000 random", coarsePicture(60, 6000, 2), pool)) failed++;
+        pool.shutdown();
+
+        System.out.printf("%d of %d checks disagree with the digraph seams\n",
+                          failed, files.length + 7 * trials + large + 4);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*************************************************************************
+ *  Compilation:  javac EnergyDemo.java
+ *  Execution:    java EnergyDemo [megapixels ...]
+ *  Dependencies: SeamCarver.java SCUtility.java Picture.java
+ *
+ *
+ *  Compare energy throughput, in megapixels per second, of the original
+ *  per-pixel method (eight Picture.get() calls and Color objects per
+ *  pixel) with the row energy kernel run over the packed pixels a
+ *  SeamCarver already holds, and with the whole constructor, which also
+ *  decodes the Picture into packed pixels. Also times a removal pass,
+ *  which is dominated by the row shift and the band recompute. Every
+ *  measurement is warmed up first, then the best of RUNS is reported.
+ *  Defaults to pictures of 1, 4 and 16 megapixels.
+ *
+ *************************************************************************/
+
+public class EnergyDemo {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    private static double square(double a) {
+        return a*a;
+    }
+
+    // the per-pixel energy SeamCarver used to compute from the Picture
+    private static double energy(Picture pic, int x, int y) {
+        if (x == 0 || x == pic.width() - 1 || y == 0 || y == pic.height() - 1) return 195075.0;
+
+        return square(pic.get(x + 1, y).getRed() - pic.get(x - 1, y).getRed())
+                + square(pic.get(x + 1, y).getGreen() - pic.get(x - 1, y).getGreen())
+                + square(pic.get(x + 1, y).getBlue() - pic.get(x - 1, y).getBlue())
+                + square(pic.get(x, y + 1).getRed() - pic.get(x, y - 1).getRed())
+                + square(pic.get(x, y + 1).getGreen() - pic.get(x, y - 1).getGreen())
+                + square(pic.get(x, y + 1).getBlue() - pic.get(x, y - 1).getBlue());
+    }
+
+    public static void main(String[] args)
+    {
+        double[] sizes = { 1, 4, 16 };
+        if (args.length > 0) {
+            sizes = new double[args.length];
+            for (int i = 0; i < args.length; i++) sizes[i] = Double.parseDouble(args[i]);
+        }
+
+        System.out.printf("%10s %14s %14s %14s %14s\n", "MP", "per-pixel", "kernel", "constructor", "removal");
+
+        for (double mp : sizes) {
+            int H = (int) Math.sqrt(mp * 1e6 * 9 / 16);
+            int W = H * 16 / 9;
+            double pixels = W * (double) H / 1e6;
+            Picture picture = SCUtility.randomPicture(W, H);
+
+            double perPixel = Double.POSITIVE_INFINITY;
+            double kernel = Double.POSITIVE_INFINITY;
+            double constructor = Double.POSITIVE_INFINITY;
+            double removal = Double.POSITIVE_INFINITY;
+            double sink = 0;
+
+            for (int r = 0; r < WARMUP + RUNS; r++) {
+                long start = System.nanoTime();
+                for (int y = 0; y < H; y++)
+                    for (int x = 0; x < W; x++)
+                        sink += energy(picture, x, y);
+                long mid = System.nanoTime();
+                SeamCarver sc = new SeamCarver(picture);
+                long end = System.nanoTime();
+                sc.computeAllEnergies();
+                long computed = System.nanoTime();
+                int[] seam = sc.findVerticalSeam();
+                long before = System.nanoTime();
+                sc.removeVerticalSeam(seam);
+                long after = System.nanoTime();
+
+                sink += sc.energy(W / 2, H / 2);
+                if (r < WARMUP) continue;
+                perPixel = Math.min(perPixel, (mid - start) / 1e9);
+                constructor = Math.min(constructor, (end - mid) / 1e9);
+                kernel = Math.min(kernel, (computed - end) / 1e9);
+                removal = Math.min(removal, (after - before) / 1e9);
+            }
+
+            System.out.printf("%10.1f %9.1f MP/s %9.1f MP/s %9.1f MP/s %9.1f MP/s\n", pixels, pixels / perPixel,
+                              pixels / kernel, pixels / constructor, pixels / removal);
+            if (sink == 0) System.out.println();
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*************************************************************************
+ *  Compilation:  javac FrameCarver.java
+ *  Execution:    java FrameCarver [frames] [width] [height] [columns] [rows]
+ *  Dependencies: SeamCarver.java Picture.java StdRandom.java
+ *
+ *
+ *  Seam carving of a sequence of frames, e.g. the frames of a video, each
+ *  shrunk by the same number of columns and then rows. The k-th seam of a
+ *  frame is first searched for only within a band around the k-th seam of
+ *  the frame before, which costs O(length * radius) instead of a pass
+ *  over the whole picture and keeps seams from jumping around between
+ *  frames. If that seam costs more than tolerance times the one it
+ *  follows, the content has changed too much and a full search is done
+ *  instead; so is every search of the first frame, or after the frame
+ *  size changes.
+ *
+ *  The client carves a synthetic panning scene twice, each frame from
+ *  scratch and as a sequence, and prints the time per frame and the
+ *  jitter: how far, on average, a pixel of the first vertical seam moves
+ *  from that seam in the frame before, so it takes at least two frames and
+ *  one column.
+ *
+ *  % java FrameCarver 60 640 360 32 16
+ *  from scratch:   82.305 ms per frame, jitter 124.67 pixels
+ *  sequence:       31.318 ms per frame, jitter 1.77 pixels, 48 of 2880 searches full
+ *
+ *************************************************************************/
+
+import java.awt.Color;
+
+public class FrameCarver {
+    private static final int RADIUS = 4;
+    private static final double TOLERANCE = 1.25;
+
+    private final int columns;
+    private final int rows;
+    private final int radius;
+    private final double tolerance;
+
+    // size of the frames the seams below belong to; the seams of the last
+    // frame, in removal order, and their energies
+    private int width = -1;
+    private int height = -1;
+    private final int[][] verticalSeams;
+    private final int[][] horizontalSeams;
+    private final double[] verticalCosts;
+    private final double[] horizontalCosts;
+
+    private int fullSearches;
+    private int bandSearches;
+
+    // a carver that takes columns columns and rows rows off every frame,
+    // with bands of the default radius and tolerance
+    public FrameCarver(int columns, int rows) {
+        this(columns, rows, RADIUS, TOLERANCE);
+    }
+
+    // a carver whose band searches stay within radius pixels of the seams
+    // of the frame before, falling back to a full search when the seam
+    // found costs more than tolerance times the one it follows
+    public FrameCarver(int columns, int rows, int radius, double tolerance) {
+        if (columns < 0 || rows < 0 || radius < 0 || tolerance < 1) throw new IllegalArgumentException();
+
+        this.columns = columns;
+        this.rows = rows;
+        this.radius = radius;
+        this.tolerance = tolerance;
+        verticalSeams = new int[columns][];
+        horizontalSeams = new int[rows][];
+        verticalCosts = new double[columns];
+        horizontalCosts = new double[rows];
+    }
+
+    // total energy of a seam in the given direction
+    private static double cost(SeamCarver sc, int[] seam, boolean vert) {
+        double total = 0;
+        for (int l = 0; l < seam.length; l++) {
+            total += vert ? sc.energy(seam[l], l) : sc.energy(l, seam[l]);
+        }
+        return total;
+    }
+
+    // the next seam in the given direction, following seams[k] if there is
+    // one and the band seam is cheap enough; records it and its cost
+    private int[] next(SeamCarver sc, boolean vert, int k, int[][] seams, double[] costs) {
+        if (seams[k] != null) {
+            int[] seam = vert ? sc.findVerticalSeam(seams[k], radius)
+                              : sc.findHorizontalSeam(seams[k], radius);
+            double cost = cost(sc, seam, vert);
+            if (cost <= tolerance * costs[k]) {
+                bandSearches++;
+                seams[k] = seam;
+                costs[k] = cost;
+                return seam;
+            }
+        }
+
+        fullSearches++;
+        seams[k] = vert ? sc.findVerticalSeam() : sc.findHorizontalSeam();
+        costs[k] = cost(sc, seams[k], vert);
+        return seams[k];
+    }
+
+    // the next frame, carved
+    public Picture carve(Picture frame) {
+        if (frame == null) throw new NullPointerException();
+        if (columns >= frame.width() || rows >= frame.height()) throw new IllegalArgumentException();
+
+        if (frame.width() != width || frame.height() != height) {
+            width = frame.width();
+            height = frame.height();
+            for (int k = 0; k < columns; k++) verticalSeams[k] = null;
+            for (int k = 0; k < rows; k++) horizontalSeams[k] = null;
+        }
+
+        SeamCarver sc = new SeamCarver(frame);
+        for (int k = 0; k < columns; k++) {
+            sc.removeVerticalSeam(next(sc, true, k, verticalSeams, verticalCosts));
+        }
+        for (int k = 0; k < rows; k++) {
+            sc.removeHorizontalSeam(next(sc, false, k, horizontalSeams, horizontalCosts));
+        }
+        return sc.picture();
+    }
+
+    // the k-th vertical seam removed from the last frame
+    public int[] verticalSeam(int k) {
+        return seam(verticalSeams, k);
+    }
+
+    // the k-th horizontal seam removed from the last frame
+    public int[] horizontalSeam(int k) {
+        return seam(horizontalSeams, k);
+    }
+
+    private static int[] seam(int[][] seams, int k) {
+        if (k < 0 || k >= seams.length) throw new IndexOutOfBoundsException();
+        if (seams[k] == null) throw new IllegalStateException("no frame carved yet");
+        return seams[k].clone();
+    }
+
+    // number of full searches so far
+    public int fullSearches() {
+        return fullSearches;
+    }
+
+    // number of band searches so far whose seam was kept
+    public int bandSearches() {
+        return bandSearches;
+    }
+
+    // average distance between the cells of two seams
+    private static double distance(int[] a, int[] b) {
+        double total = 0;
+        for (int l = 0; l < a.length; l++) total += Math.abs(a[l] - b[l]);
+        return total / a.length;
+    }
+
+    // frame t of a scene panning right over a gradient with a few bright
+    // discs and some noise
+    private static Picture frame(int[][] discs, int W, int H, int t) {
+        Picture p = new Picture(W, H);
+        for (int x = 0; x < W; x++) {
+            for (int y = 0; y < H; y++) {
+                int u = x + t;
+                int r = (u * 7 / 10) % 256;
+                int g = y * 200 / H;
+                int b = 60;
+                for (int[] disc : discs) {
+                    int dx = u - disc[0];
+                    int dy = y - disc[1];
+                    if (dx * dx + dy * dy < disc[2] * disc[2]) {
+                        r = 255;
+                        g = 255 - g;
+                        b = 200;
+                    }
+                }
+                int noise = StdRandom.uniform(8);
+                p.set(x, y, new Color(Math.min(r + noise, 255), Math.min(g + noise, 255), b + noise));
+            }
+        }
+        return p;
+    }
+
+    // carve the scene frame by frame from scratch and as a sequence
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int W = args.length > 1 ? Integer.parseInt(args[1]) : 640;
+        int H = args.length > 2 ? Integer.parseInt(args[2]) : 360;
+        int columns = args.length > 3 ? Integer.parseInt(args[3]) : W / 20;
+        int rows = args.length > 4 ? Integer.parseInt(args[4]) : H / 20;
+
+        // the jitter compares the first vertical seams of consecutive frames
+        if (frames < 2 || columns < 1 || columns >= W || rows < 0 || rows >= H) {
+            System.out.println("Usage:\njava FrameCarver [frames, at least 2] [width] [height] "
+                               + "[columns, 1 to width - 1] [rows, 0 to height - 1]");
+            return;
+        }
+
+        int[][] discs = new int[W / 40][];
+        for (int i = 0; i < discs.length; i++) {
+            discs[i] = new int[] { StdRandom.uniform(W + frames), StdRandom.uniform(H), 5 + StdRandom.uniform(H / 8) };
+        }
+        Picture[] scene = new Picture[frames];
+        for (int t = 0; t < frames; t++) scene[t] = frame(discs, W, H, t);
+
+        long nanos = 0;
+        double jitter = 0;
+        int[] last = null;
+        for (int t = 0; t < frames; t++) {
+            long start = System.nanoTime();
+            SeamCarver sc = new SeamCarver(scene[t]);
+            int[] first = null;
+            for (int k = 0; k < columns; k++) {
+                int[] seam = sc.findVerticalSeam();
+                if (k == 0) first = seam;
+                sc.removeVerticalSeam(seam);
+            }
+            for (int k = 0; k < rows; k++) sc.removeHorizontalSeam(sc.findHorizontalSeam());
+            sc.picture();
+            nanos += System.nanoTime() - start;
+
+            if (last != null) jitter += distance(first, last);
+            last = first;
+        }
+        System.out.printf("from scratch: %8.3f ms per frame, jitter %.2f pixels\n",
+                          nanos / 1e6 / frames, jitter / (frames - 1));
+
+        FrameCarver carver = new FrameCarver(columns, rows);
+        nanos = 0;
+        jitter = 0;
+        last = null;
+        for (int t = 0; t < frames; t++) {
+            long start = System.nanoTime();
+            carver.carve(scene[t]);
+            nanos += System.nanoTime() - start;
+
+            int[] first = carver.verticalSeam(0);
+            if (last != null) jitter += distance(first, last);
+            last = first;
+        }
+        System.out.printf("sequence:     %8.3f ms per frame, jitter %.2f pixels, %d of %d searches full\n",
+                          nanos / 1e6 / frames, jitter / (frames - 1), carver.fullSearches(),
+                          carver.fullSearches() + carver.bandSearches());
+    }
+}
@@ -0,0 +1,567 @@
+/*************************************************************************
+ *  Compilation:  javac MappedSeamCarver.java
+ *  Execution:    java MappedSeamCarver input.rgb width height columns rows output.rgb
+ *  Dependencies: Picture.java Stopwatch.java
+ *
+ *
+ *  A seam carver for pictures larger than the heap. Pixels, energies and
+ *  the seam backpointers live in memory-mapped temporary files, row-major
+ *  with a fixed stride, mapped in strips of whole rows so that no single
+ *  mapping exceeds the 2 GB limit of a buffer. What the carver itself
+ *  holds is a few rows (or, for horizontal seams, a block of columns of
+ *  about 16 MB), so resident memory is bounded whatever the size of the
+ *  picture; the operating system pages the strips in and out.
+ *
+ *  A vertical seam is found in one pass down the rows, with one row of
+ *  cumulative costs and a byte per pixel (the -1, 0 or +1 step to the
+ *  predecessor) written to the backpointer file, which is then walked up
+ *  from the cheapest end. A horizontal seam runs the same program over
+ *  blocks of columns, each read from the strips a row at a time. Removing
+ *  a seam shifts pixels and energies in place and recomputes energies only
+ *  in the band around the seam; a horizontal seam leaves the rows above
+ *  its highest pixel untouched. Seams and energies are exactly those of
+ *  SeamCarver, ties included.
+ *
+ *  The input and output of the client are raw 8-bit RGB, three bytes per
+ *  pixel, row by row, with no header.
+ *
+ *  % java -Xmx64m MappedSeamCarver random.rgb 6000 4000 10 10 carved.rgb
+ *  6000x4000 to 5990x3990 in 15.033 seconds
+ *
+ *************************************************************************/
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedSeamCarver implements Closeable {
+    private static final double BORDER_ENERGY = 195075.0;
+
+    // a strip of energies is about STRIP_BYTES, and the energies and
+    // backpointers of a block of columns read for a horizontal seam about
+    // BLOCK_BYTES; the block is all the heap the carver needs beyond a row
+    private static final long STRIP_BYTES = 1 << 26;
+    private static final long BLOCK_BYTES = 1 << 24;
+
+    // storage rows are stride pixels long and strips stripRows rows high;
+    // both are fixed at construction, removals only shorten the picture
+    private final int stride;
+    private final int stripRows;
+
+    // pixels as packed 0xRRGGBB ints, their energies and, per pixel, the
+    // offset of its predecessor on the last seam found; one buffer per strip
+    private final File[] files = new File[3];
+    private final IntBuffer[] pixels;
+    private final DoubleBuffer[] energies;
+    private final ByteBuffer[] edges;
+
+    private int width;
+    private int height;
+
+    // the rows a removal or an energy pass works on
+    private final int[] above;
+    private final int[] row;
+    private final int[] below;
+    private final double[] line;
+
+    // the block of columns findHorizontalSeam() works on, its energies
+    // column by column and their backpointers; allocated by its first call
+    // and kept, the block growing as the picture loses rows
+    private double[] blockEnergy;
+    private byte[] blockSteps;
+
+    // an empty width by height picture in files in dir (the default
+    // temporary directory if null), in strips of stripRows rows, or of
+    // about STRIP_BYTES if stripRows is not positive; a strip is one mapping,
+    // so stripRows is cut down to what fits the 2 GB limit of a buffer
+    private MappedSeamCarver(int width, int height, File dir, int stripRows) {
+        if (width < 1 || height < 1 || width > Integer.MAX_VALUE / 8) throw new IllegalArgumentException();
+
+        this.width = width;
+        this.height = height;
+        stride = width;
+        if (stripRows <= 0) stripRows = (int) Math.max(1, STRIP_BYTES / (8L * stride));
+        stripRows = (int) Math.min(stripRows, Integer.MAX_VALUE / (8L * stride));
+        this.stripRows = Math.min(stripRows, height);
+
+        int strips = (height + this.stripRows - 1) / this.stripRows;
+        pixels = new IntBuffer[strips];
+        energies = new DoubleBuffer[strips];
+        edges = new ByteBuffer[strips];
+
+        try {
+            ByteBuffer[] mapped = map(0, "pixels", dir, 4);
+            for (int s = 0; s < strips; s++) pixels[s] = mapped[s].asIntBuffer();
+            mapped = map(1, "energies", dir, 8);
+            for (int s = 0; s < strips; s++) energies[s] = mapped[s].asDoubleBuffer();
+            mapped = map(2, "edges", dir, 1);
+            for (int s = 0; s < strips; s++) edges[s] = mapped[s];
+        } catch (IOException e) {
+            close();
+            throw new IllegalArgumentException("Could not map a temporary file in " + dir, e);
+        }
+
+        above = new int[stride];
+        row = new int[stride];
+        below = new int[stride];
+        line = new double[stride];
+    }
+
+    // create a carver for the given picture, its files in dir (the default
+    // temporary directory if null) mapped in strips of stripRows rows, or of
+    // a default size if stripRows is not positive
+    public MappedSeamCarver(Picture picture, File dir, int stripRows) {
+        this(picture.width(), picture.height(), dir, stripRows);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = picture.get(x, y).getRGB() & 0xFFFFFF;
+            }
+            writePixels(y, row, 0, width);
+        }
+        computeAllEnergies();
+    }
+
+    // create a carver for the given picture, in the default temporary
+    // directory with strips of the default size
+    public MappedSeamCarver(Picture picture) {
+        this(picture, null, 0);
+    }
+
+    // create a carver for a width by height picture streamed from a raw
+    // 8-bit RGB file, never holding more than a row of it in memory
+    public MappedSeamCarver(File rgb, int width, int height, File dir, int stripRows) {
+        this(width, height, dir, stripRows);
+
+        byte[] bytes = new byte[3 * width];
+        try (InputStream in = new BufferedInputStream(new FileInputStream(rgb))) {
+            for (int y = 0; y < height; y++) {
+                for (int n = 0; n < bytes.length; ) {
+                    int read = in.read(bytes, n, bytes.length - n);
+                    if (read < 0) throw new EOFException();
+                    n += read;
+                }
+                for (int x = 0; x < width; x++) {
+                    row[x] = ((bytes[3 * x] & 0xFF) << 16) | ((bytes[3 * x + 1] & 0xFF) << 8) | (bytes[3 * x + 2] & 0xFF);
+                }
+                writePixels(y, row, 0, width);
+            }
+        } catch (EOFException e) {
+            close();
+            throw new IllegalArgumentException(rgb + " is shorter than " + width + "x" + height + " pixels", e);
+        } catch (IOException e) {
+            close();
+            throw new IllegalArgumentException("Could not read " + rgb, e);
+        }
+        computeAllEnergies();
+    }
+
+    // map file k, of bytes per pixel, as one buffer per strip
+    private ByteBuffer[] map(int k, String name, File dir, int bytes) throws IOException {
+        files[k] = File.createTempFile(name, ".bin", dir);
+        files[k].deleteOnExit();
+
+        long rowBytes = (long) stride * bytes;
+        ByteBuffer[] mapped = new ByteBuffer[pixels.length];
+        try (RandomAccessFile file = new RandomAccessFile(files[k], "rw")) {
+            file.setLength(rowBytes * height);
+            FileChannel channel = file.getChannel();
+            for (int s = 0; s < mapped.length; s++) {
+                int rows = Math.min(stripRows, height - s * stripRows);
+                mapped[s] = channel.map(FileChannel.MapMode.READ_WRITE, s * stripRows * rowBytes, rows * rowBytes);
+                mapped[s].order(ByteOrder.nativeOrder());
+            }
+        }
+        return mapped;
+    }
+
+    // delete the files; the carver cannot be used afterwards, and the
+    // mappings themselves go when the buffers are collected
+    public void close() {
+        for (int k = 0; k < files.length; k++) {
+            if (files[k] != null) files[k].delete();
+            files[k] = null;
+        }
+    }
+
+    // storage row y, from x on, of the given buffers
+    private IntBuffer pixelRow(int y, int x) {
+        IntBuffer buffer = pixels[y / stripRows].duplicate();
+        buffer.position((y % stripRows) * stride + x);
+        return buffer;
+    }
+
+    private DoubleBuffer energyRow(int y, int x) {
+        DoubleBuffer buffer = energies[y / stripRows].duplicate();
+        buffer.position((y % stripRows) * stride + x);
+        return buffer;
+    }
+
+    private ByteBuffer edgeRow(int y, int x) {
+        ByteBuffer buffer = edges[y / stripRows].duplicate();
+        buffer.position((y % stripRows) * stride + x);
+        return buffer;
+    }
+
+    // copy length pixels of row y, from x on, to or from to[x..]
+    private void readPixels(int y, int[] to, int x, int length) {
+        pixelRow(y, x).get(to, x, length);
+    }
+
+    private void writePixels(int y, int[] from, int x, int length) {
+        pixelRow(y, x).put(from, x, length);
+    }
+
+    private void readEnergies(int y, double[] to, int x, int length) {
+        energyRow(y, x).get(to, x, length);
+    }
+
+    private void writeEnergies(int y, double[] from, int x, int length) {
+        energyRow(y, x).put(from, x, length);
+    }
+
+    private int pixel(int x, int y) {
+        return pixels[y / stripRows].get((y % stripRows) * stride + x);
+    }
+
+    private byte edge(int x, int y) {
+        return edges[y / stripRows].get((y % stripRows) * stride + x);
+    }
+
+    // current picture; it has to fit in the heap
+    public Picture picture() {
+        Picture picture = new Picture(width, height);
+
+        for (int y = 0; y < height; y++) {
+            readPixels(y, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                picture.set(x, y, new Color(row[x]));
+            }
+        }
+        return picture;
+    }
+
+    // write the current picture to a raw 8-bit RGB file, a row at a time
+    public void write(File rgb) {
+        byte[] bytes = new byte[3 * width];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(rgb))) {
+            for (int y = 0; y < height; y++) {
+                readPixels(y, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    bytes[3 * x] = (byte) (row[x] >> 16);
+                    bytes[3 * x + 1] = (byte) (row[x] >> 8);
+                    bytes[3 * x + 2] = (byte) row[x];
+                }
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + rgb, e);
+        }
+    }
+
+    // width of current picture
+    public int width() {
+        return width;
+    }
+
+    // height of current picture
+    public int height() {
+        return height;
+    }
+
+    // energy of pixel at column x and row y
+    public double energy(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) throw new IndexOutOfBoundsException();
+
+        return energies[y / stripRows].get((y % stripRows) * stride + x);
+    }
+
+    // squared difference of the two 8-bit channels at the given shift
+    private static int channel(int a, int b, int shift) {
+        int d = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+        return d * d;
+    }
+
+    private static int gradient(int a, int b) {
+        return channel(a, b, 16) + channel(a, b, 8) + channel(a, b, 0);
+    }
+
+    // dual-gradient energy of pixel (x, y), read straight from the strips
+    private double computeEnergy(int x, int y) {
+        if (x == 0 || x == width - 1 || y == 0 || y == height - 1) return BORDER_ENERGY;
+
+        return gradient(pixel(x + 1, y), pixel(x - 1, y)) + gradient(pixel(x, y + 1), pixel(x, y - 1));
+    }
+
+    // energies of pixels lo..hi of row y into line[], from the pixels of
+    // that row and the ones above and below it
+    private void computeEnergies(int y, int[] up, int[] at, int[] down, int lo, int hi) {
+        for (int x = lo; x <= hi; x++) {
+            if (x == 0 || x == width - 1 || y == 0 || y == height - 1) line[x] = BORDER_ENERGY;
+            else line[x] = gradient(at[x + 1], at[x - 1]) + gradient(down[x], up[x]);
+        }
+    }
+
+    // energies of the whole picture, in one pass down the rows
+    private void computeAllEnergies() {
+        int[] up = above;
+        int[] at = row;
+        int[] down = below;
+        readPixels(0, at, 0, width);
+        for (int y = 0; y < height; y++) {
+            if (y + 1 < height) readPixels(y + 1, down, 0, width);
+            computeEnergies(y, up, at, down, 0, width - 1);
+            writeEnergies(y, line, 0, width);
+
+            int[] temp = up;
+            up = at;
+            at = down;
+            down = temp;
+        }
+    }
+
+    // relax cell c from the cumulative costs of the line before into
+    // costs[c], returning the offset of the predecessor; the highest
+    // neighbour is tried first, to break ties the way SeamCarver does
+    private static byte relax(double[] before, double[] costs, int c, int cells, double energy) {
+        int from = 0;
+        double min = Double.POSITIVE_INFINITY;
+        for (int d = (c + 1 < cells) ? 1 : 0; d >= ((c > 0) ? -1 : 0); d--) {
+            if (before[c + d] < min) {
+                min = before[c + d];
+                from = d;
+            }
+        }
+        costs[c] = min + energy;
+        return (byte) from;
+    }
+
+    // the cell the cheapest seam ends in, scanning from the top cell down
+    private static int cheapestEnd(double[] costs, int cells) {
+        int j = cells - 1;
+        for (int c = cells - 2; c >= 0; c--) {
+            if (costs[c] < costs[j]) j = c;
+        }
+        return j;
+    }
+
+    // sequence of indices for vertical seam: one pass down the rows keeping
+    // a row of cumulative costs, the backpointers going to the edge file
+    public int[] findVerticalSeam() {
+        double[] costs = new double[width];
+        double[] next = new double[width];
+        byte[] step = new byte[width];
+
+        for (int y = 0; y < height; y++) {
+            readEnergies(y, line, 0, width);
+            if (y == 0) {
+                System.arraycopy(line, 0, costs, 0, width);
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                step[x] = relax(costs, next, x, width, line[x]);
+            }
+            edgeRow(y, 0).put(step, 0, width);
+
+            double[] temp = costs;
+            costs = next;
+            next = temp;
+        }
+
+        int[] path = new int[height];
+        int j = cheapestEnd(costs, width);
+        for (int y = height - 1; y >= 0; y--) {
+            path[y] = j;
+            if (y > 0) j += edge(j, y);
+        }
+        return path;
+    }
+
+    // sequence of indices for horizontal seam: the same program over the
+    // columns, taken in blocks read a row at a time so that the strips are
+    // streamed through rather than walked down column by column
+    public int[] findHorizontalSeam() {
+        if (blockEnergy == null) {
+            int cells = (int) Math.max(1, Math.min(width, BLOCK_BYTES / (9L * height))) * height;
+            blockEnergy = new double[cells];
+            blockSteps = new byte[cells];
+        }
+        int block = Math.min(width, blockEnergy.length / height);
+        double[] energy = blockEnergy;
+        byte[] step = blockSteps;
+        double[] costs = new double[height];
+        double[] next = new double[height];
+
+        for (int x0 = 0; x0 < width; x0 += block) {
+            int columns = Math.min(block, width - x0);
+
+            for (int y = 0; y < height; y++) {
+                readEnergies(y, line, x0, columns);
+                for (int i = 0; i < columns; i++) energy[i * height + y] = line[x0 + i];
+            }
+
+            for (int i = 0; i < columns; i++) {
+                int at = i * height;
+                if (x0 + i == 0) {
+                    System.arraycopy(energy, 0, costs, 0, height);
+                    continue;
+                }
+                for (int y = 0; y < height; y++) {
+                    step[at + y] = relax(costs, next, y, height, energy[at + y]);
+                }
+
+                double[] temp = costs;
+                costs = next;
+                next = temp;
+            }
+
+            for (int y = 0; y < height; y++) {
+                ByteBuffer out = edgeRow(y, x0);
+                for (int i = 0; i < columns; i++) out.put(step[i * height + y]);
+            }
+        }
+
+        int[] path = new int[width];
+        int j = cheapestEnd(costs, height);
+        for (int x = width - 1; x >= 0; x--) {
+            path[x] = j;
+            if (x > 0) j += edge(x, j);
+        }
+        return path;
+    }
+
+    // check seam is a seam of lines cells of cells each
+    private static void checkSeam(int[] seam, int lines, int cells) {
+        if (seam == null) throw new NullPointerException();
+        if (seam.length != lines || cells <= 1) throw new IllegalArgumentException();
+
+        for (int l = 0; l < seam.length; l++) {
+            if (seam[l] < 0 || seam[l] >= cells) throw new IllegalArgumentException();
+            if (l > 0 && Math.abs(seam[l] - seam[l - 1]) > 1) throw new IllegalArgumentException();
+        }
+    }
+
+    // first and last cell of line l, after seam has been removed, whose
+    // energy can differ; see SeamCarver
+    private static int bandLo(int[] seam, int l) {
+        int lo = seam[l];
+        if (l > 0) lo = Math.min(lo, seam[l - 1]);
+        if (l < seam.length - 1) lo = Math.min(lo, seam[l + 1]);
+        return Math.max(lo - 1, 0);
+    }
+
+    private static int bandHi(int[] seam, int l, int cells) {
+        int hi = seam[l];
+        if (l > 0) hi = Math.max(hi, seam[l - 1]);
+        if (l < seam.length - 1) hi = Math.max(hi, seam[l + 1]);
+        return Math.min(hi, cells - 1);
+    }
+
+    // shift the pixels and energies of row y after cell x left by one,
+    // leaving the shifted pixels of the whole row in to[]
+    private void shiftRow(int y, int x, int[] to) {
+        readPixels(y, to, 0, width + 1);
+        System.arraycopy(to, x + 1, to, x, width - x);
+        writePixels(y, to, x, width - x);
+
+        energyRow(y, x + 1).get(line, x, width - x);
+        writeEnergies(y, line, x, width - x);
+    }
+
+    // remove vertical seam from current picture: one pass down the rows,
+    // each shifted a row ahead of the one whose energies are recomputed
+    public void removeVerticalSeam(int[] seam) {
+        checkSeam(seam, height, width);
+        width--;
+
+        int[] up = above;
+        int[] at = row;
+        int[] down = below;
+        shiftRow(0, seam[0], at);
+        for (int y = 0; y < height; y++) {
+            if (y + 1 < height) shiftRow(y + 1, seam[y + 1], down);
+
+            int lo = bandLo(seam, y);
+            int hi = bandHi(seam, y, width);
+            computeEnergies(y, up, at, down, lo, hi);
+            writeEnergies(y, line, lo, hi - lo + 1);
+
+            int[] temp = up;
+            up = at;
+            at = down;
+            down = temp;
+        }
+    }
+
+    // remove horizontal seam from current picture: every column moves up by
+    // one below the seam, so the strips above its highest pixel are not
+    // touched. Rows are rewritten top down, each from the one below it
+    public void removeHorizontalSeam(int[] seam) {
+        checkSeam(seam, width, height);
+
+        int first = seam[0];
+        for (int x = 1; x < width; x++) first = Math.min(first, seam[x]);
+
+        double[] lower = new double[width];
+        int[] at = row;
+        int[] down = below;
+        readPixels(first, at, 0, width);
+        readEnergies(first, line, 0, width);
+        for (int y = first; y < height - 1; y++) {
+            readPixels(y + 1, down, 0, width);
+            readEnergies(y + 1, lower, 0, width);
+            for (int x = 0; x < width; x++) {
+                if (seam[x] <= y) {
+                    at[x] = down[x];
+                    line[x] = lower[x];
+                }
+            }
+            writePixels(y, at, 0, width);
+            writeEnergies(y, line, 0, width);
+
+            int[] temp = at;
+            at = down;
+            down = temp;
+            System.arraycopy(lower, 0, line, 0, width);
+        }
+        height--;
+
+        for (int x = 0; x < width; x++) {
+            int hi = bandHi(seam, x, height);
+            for (int y = bandLo(seam, x); y <= hi; y++) {
+                energies[y / stripRows].put((y % stripRows) * stride + x, computeEnergy(x, y));
+            }
+        }
+    }
+
+    // carve a raw RGB file, columns first, then rows
+    public static void main(String[] args) {
+        File input = new File(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        int columns = Integer.parseInt(args[3]);
+        int rows = Integer.parseInt(args[4]);
+
+        Stopwatch sw = new Stopwatch();
+        try (MappedSeamCarver sc = new MappedSeamCarver(input, width, height, null, 0)) {
+            for (int i = 0; i < columns; i++) sc.removeVerticalSeam(sc.findVerticalSeam());
+            for (int i = 0; i < rows; i++) sc.removeHorizontalSeam(sc.findHorizontalSeam());
+            sc.write(new File(args[5]));
+            System.out.printf("%dx%d to %dx%d in %.3f seconds\n", width, height, sc.width(), sc.height(), sw.elapsedTime());
+        }
+    }
+}
@@ -6,8 +6,10 @@
  *                
  *
  *  Read image from file specified as command line argument. Use SeamCarver
- *  to remove number of rows and columns specified as command line arguments.
- *  Show the images in StdDraw and print time elapsed to screen.
+ *  to remove number of rows and columns specified as command line arguments,
+ *  each step taking the cheaper of the two seams (resizeGreedy()), or with
+ *  the argument transport in the order picked by the transport map
+ *  (resize()). Show the images in StdDraw and print time elapsed to screen.
  *
  *************************************************************************/
 
@@ -23,21 +25,15 @@ public class ResizeDemo {
         Picture inputImg = new Picture("12x10.png");
         int removeColumns = 3;
         int removeRows = 3;
+        boolean transport = args.length > 0 && args[0].equals("transport");
 
         System.out.printf("image is %d columns by %d rows\n", inputImg.width(), inputImg.height());
         SeamCarver sc = new SeamCarver(inputImg);
 
         Stopwatch sw = new Stopwatch();
 
-        for (int i = 0; i < removeColumns; i++) {
-            int[] verticalSeam = sc.findVerticalSeam();
-            sc.removeVerticalSeam(verticalSeam);
-        }
-
-        for (int i = 0; i < removeRows; i++) {
-            int[] horizontalSeam = sc.findHorizontalSeam();
-            sc.removeHorizontalSeam(horizontalSeam);
-        }
+        if (transport) sc.resize(sc.width() - removeColumns, sc.height() - removeRows);
+        else           sc.resizeGreedy(sc.width() - removeColumns, sc.height() - removeRows);
 
         Picture outputImg = sc.picture();
 
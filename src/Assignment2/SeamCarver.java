@@ -1,30 +1,240 @@
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SeamCarver {
-    private final Picture pic;
-    private double[][] weight;
-    private Color[][] picColor;
+    private static final double BORDER_ENERGY = 195075.0;
+
+    // after this many consecutive removals that have to shift pixels across
+    // storage rows, the storage is transposed so that the next ones are
+    // plain System.arraycopy row shifts again
+    private static final int FLIP_AFTER = 2;
+
+    // with a pool, lines of at least PARALLEL_CELLS cells are relaxed in
+    // chunks of about a quarter of a line per worker, but at least
+    // CHUNK_CELLS / 4 cells, and pictures of at least PARALLEL_PIXELS have
+    // their energies computed in tiles of about TILE_PIXELS
+    private static final int PARALLEL_CELLS = 4096;
+    private static final int CHUNK_CELLS = 1024;
+    private static final int PARALLEL_PIXELS = 1 << 18;
+    private static final int TILE_PIXELS = 1 << 14;
+
+    // energy pyramids stop halving at lines of COARSEST_CELLS cells or
+    // fewer, and are rebuilt once 1/PYRAMID_REFRESH of the cells they were
+    // built from have been removed
+    private static final int COARSEST_CELLS = 32;
+    private static final int PYRAMID_REFRESH = 8;
+
+    private final ForkJoinPool pool;
+
+    // pixels as packed 0xRRGGBB ints and their energies, both stored in rows
+    // of length stride; a storage row is a picture row, or a picture column
+    // when transposed is set. Removing a seam only shortens rows or drops
+    // the last one, so stride stays put until the storage is transposed
+    private int[] rgb;
+    private double[] weight;
+    private int stride;
+    private boolean transposed;
     private int width;
     private int height;
-    private int num;
+    private int stridedRemovals;
+
+    // cumulative seam costs in the same layout as weight, one table per
+    // direction (VERTICAL or HORIZONTAL), of which only the first
+    // validLines[d] lines are up to date. edgeTo holds the offset (-1, 0 or
+    // +1) of the predecessor in the line before so that it stays valid when
+    // a line is shifted by a removed seam
+    private static final int HORIZONTAL = 0;
+    private static final int VERTICAL = 1;
+    private final double[][] distTos = new double[2][];
+    private final byte[][] edgeTos = new byte[2][];
+    private final int[] validLines = new int[2];
+
+    // the cost table for the current direction, see orient()
+    private int dir;
     private double[] distTo;
-    private int[] edgeTo;
+    private byte[] edgeTo;
+
+    // a seam crosses lines of cells each, one pixel per line: rows of width
+    // cells for a vertical seam, columns of height cells for a horizontal
+    // one. Cell c of line l is at l * lineStep + c * cellStep; see orient()
+    private int lines;
+    private int cells;
+    private int lineStep;
+    private int cellStep;
+
+    // the energy pyramid for each direction, or null; see Pyramid
+    private final Pyramid[] pyramids = new Pyramid[2];
+
+    // for the scratch copy insertSeams() carves: the cell, in the insertion
+    // direction of the original picture, each pixel came from
+    private int[] origin;
+
+    // scratch for findDisjointSeams(), all false between calls
+    private boolean[] occupied;
+
+    // a deep copy of that, with its cost tables or with empty ones
+    private SeamCarver(SeamCarver that, boolean withCosts) {
+        pool = that.pool;
+        take(that);
+        rgb = rgb.clone();
+        weight = weight.clone();
+        for (int d = 0; d < 2; d++) {
+            if (!withCosts) {
+                distTos[d] = null;
+                edgeTos[d] = null;
+                validLines[d] = 0;
+            }
+            if (distTos[d] != null) distTos[d] = distTos[d].clone();
+            if (edgeTos[d] != null) edgeTos[d] = edgeTos[d].clone();
+        }
+        orient(dir == VERTICAL);
+    }
+
+    // share all state of that
+    private void take(SeamCarver that) {
+        rgb = that.rgb;
+        weight = that.weight;
+        stride = that.stride;
+        transposed = that.transposed;
+        width = that.width;
+        height = that.height;
+        stridedRemovals = that.stridedRemovals;
+        for (int d = 0; d < 2; d++) {
+            distTos[d] = that.distTos[d];
+            edgeTos[d] = that.edgeTos[d];
+            validLines[d] = that.validLines[d];
+            pyramids[d] = null;
+        }
+        orient(that.dir == VERTICAL);
+    }
 
     // create a seam carver object based on the given picture
     public SeamCarver(Picture picture) {
-        pic = picture;
-        width = pic.width();
-        height = pic.height();
+        this(picture, null);
+    }
+
+    // create a seam carver that spreads energy and seam cost computation of
+    // large pictures over the given pool; a null pool runs everything serially
+    public SeamCarver(Picture picture, ForkJoinPool pool) {
+        if (picture == null) throw new NullPointerException();
 
-        num = width * height;
+        this.pool = pool;
 
-        weight = new double[height][width];
-        picColor = new Color[height][width];
+        width = picture.width();
+        height = picture.height();
+        stride = width;
+
+        rgb = new int[width * height];
+        weight = new double[width * height];
 
         for (int h = 0; h < height; h++) {
             for (int w = 0; w < width; w++) {
-                weight[h][w] = energy(w, h);
-                picColor[h][w] = pic.get(w, h);
+                rgb[h * stride + w] = picture.get(w, h).getRGB() & 0xFFFFFF;
+            }
+        }
+
+        orient(true);
+        computeAllEnergies();
+    }
+
+    // a carver of packed pixels in rows of width, without a pool
+    private SeamCarver(int[] rgb, int width, int height) {
+        pool = null;
+        this.rgb = rgb;
+        this.width = width;
+        this.height = height;
+        stride = width;
+        weight = new double[width * height];
+
+        orient(true);
+        computeAllEnergies();
+    }
+
+    // energies of the whole picture, in tiles on the pool if it is large;
+    // EnergyDemo calls it to time the row kernel on its own
+    void computeAllEnergies() {
+        long start = SeamCarverMetrics.start();
+        if (pool != null && (long) width * height >= PARALLEL_PIXELS) {
+            pool.invoke(new EnergyTask(0, lines, 0, cells));
+        } else {
+            for (int l = 0; l < lines; l++) {
+                computeEnergies(l, 0, cells - 1);
+            }
+        }
+        SeamCarverMetrics.stop(SeamCarverMetrics.ENERGY, start, width, height);
+    }
+
+    // computes the energies of lines [l0, l1) and cells [c0, c1), splitting
+    // the longer side until the tile is small enough
+    private class EnergyTask extends RecursiveAction {
+        private final int l0, l1, c0, c1;
+
+        EnergyTask(int l0, int l1, int c0, int c1) {
+            this.l0 = l0;
+            this.l1 = l1;
+            this.c0 = c0;
+            this.c1 = c1;
+        }
+
+        protected void compute() {
+            if ((l1 - l0) * (c1 - c0) <= TILE_PIXELS) {
+                for (int l = l0; l < l1; l++) {
+                    computeEnergies(l, c0, c1 - 1);
+                }
+                return;
+            }
+
+            if (l1 - l0 > c1 - c0) {
+                int mid = (l0 + l1) >>> 1;
+                invokeAll(new EnergyTask(l0, mid, c0, c1), new EnergyTask(mid, l1, c0, c1));
+            } else {
+                int mid = (c0 + c1) >>> 1;
+                invokeAll(new EnergyTask(l0, l1, c0, mid), new EnergyTask(l0, l1, mid, c1));
+            }
+        }
+    }
+
+    // relaxes cells [lo, hi) of line l, in chunks of at most chunk cells;
+    // cells of one line only read the line before, so the range can be
+    // split freely
+    private class RelaxTask extends RecursiveAction {
+        private final int l, lo, hi, chunk;
+
+        RelaxTask(int l, int lo, int hi, int chunk) {
+            this.l = l;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        protected void compute() {
+            if (hi - lo <= chunk) {
+                for (int c = lo; c < hi; c++) {
+                    relax(c, l);
+                }
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new RelaxTask(l, lo, mid, chunk), new RelaxTask(l, mid, hi, chunk));
+        }
+    }
+
+    // relaxes the cost table line by line from line first on, inside the
+    // pool so the workers stay busy between lines
+    private class CostsTask extends RecursiveAction {
+        private final int first;
+
+        CostsTask(int first) {
+            this.first = first;
+        }
+
+        protected void compute() {
+            int chunk = Math.max(CHUNK_CELLS / 4, cells / (4 * pool.getParallelism()));
+            for (int l = first; l < lines; l++) {
+                new RelaxTask(l, 0, cells, chunk).invoke();
             }
         }
     }
@@ -35,7 +245,7 @@ public class SeamCarver {
 
         for (int h = 0; h < height; h++) {
             for (int w = 0; w < width; w++) {
-                picture.set(w, h, picColor[h][w]);
+                picture.set(w, h, new Color(rgb[index(w, h)]));
             }
         }
         return picture;
@@ -51,176 +261,1027 @@ public class SeamCarver {
         return height;
     }
 
-    private double square(double a) {
-        return a*a;
+    // storage index of pixel (x, y)
+    private int index(int x, int y) {
+        if (transposed) return x * stride + y;
+        return y * stride + x;
+    }
+
+    // set up lines, cells and the cost table for seams in the given direction
+    private void orient(boolean vert) {
+        dir = vert ? VERTICAL : HORIZONTAL;
+        distTo = distTos[dir];
+        edgeTo = edgeTos[dir];
+        lines = vert ? height : width;
+        cells = vert ? width : height;
+
+        if (vert != transposed) {
+            lineStep = stride;
+            cellStep = 1;
+        } else {
+            lineStep = 1;
+            cellStep = stride;
+        }
+    }
+
+    // squared difference of the two 8-bit channels at the given shift
+    private static int channel(int a, int b, int shift) {
+        int d = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+        return d * d;
+    }
+
+    private static int gradient(int a, int b) {
+        return channel(a, b, 16) + channel(a, b, 8) + channel(a, b, 0);
+    }
+
+    // dual-gradient energy of cell c in line l from the current packed
+    // colours; the energy is symmetric, so it is the same in either direction
+    private double computeEnergy(int c, int l) {
+        if (c == 0 || c == cells - 1 || l == 0 || l == lines - 1) return BORDER_ENERGY;
+
+        int i = l * lineStep + c * cellStep;
+        return gradient(rgb[i + cellStep], rgb[i - cellStep]) + gradient(rgb[i + lineStep], rgb[i - lineStep]);
+    }
+
+    // energies of cells lo..hi of line l. When the line is contiguous in
+    // storage the interior cells go through one flat loop over the packed
+    // ints, with no calls or branches, which the JIT compiles to SIMD code
+    private void computeEnergies(int l, int lo, int hi) {
+        if (cellStep != 1 || l == 0 || l == lines - 1) {
+            for (int c = lo; c <= hi; c++) {
+                weight[l * lineStep + c * cellStep] = computeEnergy(c, l);
+            }
+            return;
+        }
+
+        int base = l * lineStep;
+        if (lo == 0) {
+            weight[base] = BORDER_ENERGY;
+            lo = 1;
+        }
+        if (hi == cells - 1) {
+            weight[base + hi] = BORDER_ENERGY;
+            hi--;
+        }
+
+        int[] p = rgb;
+        int up = -lineStep;
+        int down = lineStep;
+        for (int i = base + lo; i <= base + hi; i++) {
+            int rx = ((p[i + 1] >> 16) & 0xFF) - ((p[i - 1] >> 16) & 0xFF);
+            int gx = ((p[i + 1] >> 8) & 0xFF) - ((p[i - 1] >> 8) & 0xFF);
+            int bx = (p[i + 1] & 0xFF) - (p[i - 1] & 0xFF);
+            int ry = ((p[i + down] >> 16) & 0xFF) - ((p[i + up] >> 16) & 0xFF);
+            int gy = ((p[i + down] >> 8) & 0xFF) - ((p[i + up] >> 8) & 0xFF);
+            int by = (p[i + down] & 0xFF) - (p[i + up] & 0xFF);
+            weight[i] = rx * rx + gx * gx + bx * bx + ry * ry + gy * gy + by * by;
+        }
     }
 
     // energy of pixel at column x and row y
     public double energy(int x, int y) {
         if (x < 0 || x >= this.width || y < 0 || y >= this.height) throw new IndexOutOfBoundsException();
 
-        if (x == 0 || x == this.width - 1 || y == 0 || y == this.height - 1) return 195075.0;
+        return weight[index(x, y)];
+    }
+
+    // relax cell c of line l from its (up to three) neighbours in the line
+    // before; the highest neighbour is tried first so ties resolve the same
+    // way the topological order of the old width*height+2 vertex digraph did
+    private void relax(int c, int l) {
+        int i = l * lineStep + c * cellStep;
+
+        if (l == 0) {
+            distTo[i] = weight[i];
+            edgeTo[i] = 0;
+            return;
+        }
 
-        return square(pic.get(x + 1, y).getRed() - pic.get(x - 1, y).getRed())
-                + square(pic.get(x + 1, y).getGreen() - pic.get(x - 1, y).getGreen())
-                + square(pic.get(x + 1, y).getBlue() - pic.get(x - 1, y).getBlue())
-                + square(pic.get(x, y + 1).getRed() - pic.get(x, y - 1).getRed())
-                + square(pic.get(x, y + 1).getGreen() - pic.get(x, y - 1).getGreen())
-                + square(pic.get(x, y + 1).getBlue() - pic.get(x, y - 1).getBlue());
+        int before = i - lineStep;
+        int from = 0;
+        double min = Double.POSITIVE_INFINITY;
+
+        for (int d = (c + 1 < cells) ? 1 : 0; d >= ((c > 0) ? -1 : 0); d--) {
+            if (distTo[before + d * cellStep] < min) {
+                min = distTo[before + d * cellStep];
+                from = d;
+            }
+        }
+
+        distTo[i] = min + weight[i];
+        edgeTo[i] = (byte) from;
     }
 
-    private Stack<Integer> adj(int x) {
-        Stack<Integer> s = new Stack<Integer>();
+    // flip the storage so that picture columns become storage rows (or back);
+    // the cost tables are carried along, their offsets are seam relative
+    private void transpose() {
+        long start = SeamCarverMetrics.start();
+        int rows = transposed ? width : height;
+        int cols = transposed ? height : width;
+
+        int[] tempColor = new int[rows * cols];
+        double[] temp = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                tempColor[j * rows + i] = rgb[i * stride + j];
+                temp[j * rows + i] = weight[i * stride + j];
+            }
+        }
+        rgb = tempColor;
+        weight = temp;
+
+        for (int d = 0; d < 2; d++) {
+            if (validLines[d] == 0) {
+                distTos[d] = null;
+                edgeTos[d] = null;
+                continue;
+            }
 
-        if (x == num + 1) {
-            for (int i = 0; i < width; i++) {
-                s.push(i);
+            double[] tempDist = new double[rows * cols];
+            byte[] tempEdge = new byte[rows * cols];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    tempDist[j * rows + i] = distTos[d][i * stride + j];
+                    tempEdge[j * rows + i] = edgeTos[d][i * stride + j];
+                }
             }
-            return s;
+            distTos[d] = tempDist;
+            edgeTos[d] = tempEdge;
         }
 
-        if (x == num) return s;
+        if (origin != null) {
+            int[] tempOrigin = new int[rows * cols];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    tempOrigin[j * rows + i] = origin[i * stride + j];
+                }
+            }
+            origin = tempOrigin;
+        }
 
-        // last row
-        if (x >= num - width) {
-            s.push(num);
-            return s;
+        stride = rows;
+        transposed = !transposed;
+        SeamCarverMetrics.stop(SeamCarverMetrics.TRANSPOSE, start, width, height);
+    }
+
+    // bring the cost table for seams in the given direction up to date,
+    // relaxing only the lines after the ones that are still valid
+    private void updateCosts(boolean vert) {
+        orient(vert);
+        if (validLines[dir] == lines) return;
+
+        if (distTo == null || distTo.length < rgb.length) {
+            distTos[dir] = new double[rgb.length];
+            edgeTos[dir] = new byte[rgb.length];
+            validLines[dir] = 0;
+            orient(vert);
         }
 
-        // left edge
-        if (x % width == 0) {
-            s.push(x + width);
-            s.push(x + width + 1);
-            return s;
+        long start = SeamCarverMetrics.start();
+        if (pool != null && cells >= PARALLEL_CELLS) {
+            pool.invoke(new CostsTask(validLines[dir]));
+        } else {
+            for (int l = validLines[dir]; l < lines; l++) {
+                for (int c = 0; c < cells; c++) {
+                    relax(c, l);
+                }
+            }
         }
+        validLines[dir] = lines;
+        SeamCarverMetrics.stop(SeamCarverMetrics.COSTS, start, width, height);
+    }
 
-        // right edge
-        if (x % width == width - 1) {
-            s.push(x + width - 1);
-            s.push(x + width);
-            return s;
+    // the cell the cheapest seam ends in: the last line is scanned from the
+    // top cell down, again to match the old tie-breaking
+    private int cheapestEnd() {
+        int last = (lines - 1) * lineStep;
+        int j = cells - 1;
+        for (int c = cells - 2; c >= 0; c--) {
+            if (distTo[last + c * cellStep] < distTo[last + j * cellStep]) j = c;
         }
+        return j;
+    }
+
+    // total energy of the cheapest seam in the given direction
+    private double seamCost(boolean vert) {
+        updateCosts(vert);
+        return distTo[(lines - 1) * lineStep + cheapestEnd() * cellStep];
+    }
 
-        s.push(x + width - 1);
-        s.push(x + width);
-        s.push(x + width + 1);
+    // sequence of cell indices, one per line, for a seam in the given direction
+    private int[] findSeam(boolean vert) {
+        updateCosts(vert);
 
-        return s;
+        int j = cheapestEnd();
+        int[] path = new int[lines];
+        for (int l = lines - 1; l >= 0; l--) {
+            path[l] = j;
+            j += edgeTo[l * lineStep + j * cellStep];
+        }
+
+        return path;
     }
 
-    private void relax(int v, int e) {
-        int x = e % width;
-        int y = e / width;
+    // the cheapest seam in the given direction among those that stay within
+    // radius cells of near in every line: the dynamic program of findSeam(),
+    // ties broken the same way, over that band only. The cost tables are
+    // left alone
+    private int[] findSeamNear(int[] near, int radius, boolean vert) {
+        orient(vert);
+        checkSeam(near);
+        if (radius < 0) throw new IllegalArgumentException();
 
-        double w;
+        long start = SeamCarverMetrics.start();
+        int[] seam = bandSeam(weight, lines, cells, lineStep, cellStep, near, radius);
+        SeamCarverMetrics.stop(SeamCarverMetrics.COSTS, start, width, height);
+        return seam;
+    }
 
-        if (y >= height) w = 0;
-        else w = weight[y][x];
+    // the band search on energies e of lines lines of cells cells, cell c of
+    // line l at l * lineStep + c * cellStep, around the seam near. The
+    // band's costs live in two lines of 2 * radius + 1 cells
+    private static int[] bandSeam(double[] e, int lines, int cells, int lineStep, int cellStep,
+                                  int[] near, int radius) {
+        radius = Math.min(radius, cells);
+        int span = 2 * radius + 1;
+        double[] cost = new double[span];
+        double[] next = new double[span];
+        byte[] step = new byte[lines * span];
 
-        if (distTo[e] > distTo[v] + w) {
-            distTo[e] = distTo[v] + w;
-            edgeTo[e] = v;
+        int lo = 0;
+        int hi = -1;
+        for (int l = 0; l < lines; l++) {
+            int prevLo = lo;
+            int prevHi = hi;
+            lo = Math.max(near[l] - radius, 0);
+            hi = Math.min(near[l] + radius, cells - 1);
+
+            for (int c = lo; c <= hi; c++) {
+                double energy = e[l * lineStep + c * cellStep];
+                if (l == 0) {
+                    next[c - lo] = energy;
+                    continue;
+                }
+
+                int from = 0;
+                double min = Double.POSITIVE_INFINITY;
+                for (int d = (c + 1 < cells) ? 1 : 0; d >= ((c > 0) ? -1 : 0); d--) {
+                    if (c + d < prevLo || c + d > prevHi) continue;
+                    if (cost[c + d - prevLo] < min) {
+                        min = cost[c + d - prevLo];
+                        from = d;
+                    }
+                }
+                next[c - lo] = min + energy;
+                step[l * span + c - lo] = (byte) from;
+            }
+
+            double[] temp = cost;
+            cost = next;
+            next = temp;
         }
+
+        int j = hi;
+        for (int c = hi - 1; c >= lo; c--) {
+            if (cost[c - lo] < cost[j - lo]) j = c;
+        }
+
+        int[] path = new int[lines];
+        for (int l = lines - 1; l >= 0; l--) {
+            path[l] = j;
+            j += step[l * span + j - Math.max(near[l] - radius, 0)];
+        }
+        return path;
     }
 
-    // transpose everything
-    private void transpose() {
-        double[][] temp = new double[width][height];
-        Color[][] tempColor = new Color[width][height];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                temp[j][i] = weight[i][j];
-                tempColor[j][i] = picColor[i][j];
+    // coarser and coarser copies of the energies, for seams in one
+    // direction. Level k >= 1 has lines[k] lines of cells[k] cells, each the
+    // mean of the (up to four) cells of level k - 1 it covers, in rows of
+    // strides[k]; level 0 is weight itself. A seam removed from the picture
+    // is only projected onto the coarse levels: whenever a level should have
+    // one cell fewer per line, the cells the seam runs through are dropped.
+    // Their energies are not recomputed, so the coarse levels drift until
+    // the pyramid is rebuilt
+    private static class Pyramid {
+        final double[][] energy;
+        final int[] lines;
+        final int[] cells;
+        final int[] strides;
+        final int refreshAt;
+        int removals;
+
+        Pyramid(int levels, int refreshAt) {
+            energy = new double[levels][];
+            lines = new int[levels];
+            cells = new int[levels];
+            strides = new int[levels];
+            this.refreshAt = refreshAt;
+        }
+    }
+
+    // the pyramid for the current direction, built if it is missing or stale
+    private Pyramid pyramid() {
+        Pyramid p = pyramids[dir];
+        if (p != null && p.removals < p.refreshAt) return p;
+
+        long start = SeamCarverMetrics.start();
+        int levels = 1;
+        for (int n = cells, m = lines; n > COARSEST_CELLS && m > 1; n = (n + 1) / 2, m = (m + 1) / 2) {
+            levels++;
+        }
+
+        p = new Pyramid(levels, Math.max(1, cells / PYRAMID_REFRESH));
+        p.lines[0] = lines;
+        p.cells[0] = cells;
+        for (int k = 1; k < levels; k++) {
+            int L = (p.lines[k - 1] + 1) / 2;
+            int C = (p.cells[k - 1] + 1) / 2;
+            double[] from = (k == 1) ? weight : p.energy[k - 1];
+            int fromLine = (k == 1) ? lineStep : p.strides[k - 1];
+            int fromCell = (k == 1) ? cellStep : 1;
+            double[] to = new double[L * C];
+
+            for (int l = 0; l < L; l++) {
+                int l1 = Math.min(2 * l + 1, p.lines[k - 1] - 1);
+                for (int c = 0; c < C; c++) {
+                    int c1 = Math.min(2 * c + 1, p.cells[k - 1] - 1);
+                    double sum = 0;
+                    int n = 0;
+                    for (int i = 2 * l; i <= l1; i++) {
+                        for (int j = 2 * c; j <= c1; j++) {
+                            sum += from[i * fromLine + j * fromCell];
+                            n++;
+                        }
+                    }
+                    to[l * C + c] = sum / n;
+                }
             }
+
+            p.energy[k] = to;
+            p.lines[k] = L;
+            p.cells[k] = C;
+            p.strides[k] = C;
         }
-        weight = temp;
-        picColor = tempColor;
 
-        int tmp = height;
-        height = width;
-        width = tmp;
+        pyramids[dir] = p;
+        SeamCarverMetrics.stop(SeamCarverMetrics.ENERGY, start, width, height);
+        return p;
+    }
+
+    // after seam was removed in the current direction: drop one cell per
+    // line from each coarse level that now has more than its share
+    private void shrinkPyramid(int[] seam) {
+        Pyramid p = pyramids[dir];
+        if (p == null) return;
+
+        p.removals++;
+        p.cells[0] = cells;
+        for (int k = 1; k < p.energy.length; k++) {
+            if (p.cells[k] <= (p.cells[k - 1] + 1) / 2) continue;
+
+            double[] e = p.energy[k];
+            int C = p.cells[k];
+            for (int l = 0; l < p.lines[k]; l++) {
+                int c = Math.min(seam[Math.min(l << k, lines - 1)] >> k, C - 1);
+                int at = l * p.strides[k];
+                System.arraycopy(e, at + c + 1, e, at + c, C - c - 1);
+            }
+            p.cells[k]--;
+        }
+    }
+
+    // a seam of a level of lines lines of cells cells through the cells
+    // of the coarse seam one level up, scaled; odd lines go halfway between
+    // their neighbours, so the result moves by at most one cell per line
+    private static int[] project(int[] coarse, int lines, int cells) {
+        int[] near = new int[lines];
+        for (int l = 0; l < lines; l++) {
+            int i = l / 2;
+            int c = (l % 2 == 0 || i + 1 >= coarse.length) ? 2 * coarse[i] : coarse[i] + coarse[i + 1];
+            near[l] = Math.min(c, cells - 1);
+        }
+        return near;
+    }
+
+    // an approximation of the cheapest seam in the given direction, found
+    // coarse to fine: exactly on the coarsest level of the energy pyramid,
+    // then on each finer level only within corridor cells of the seam from
+    // the level above. That is O(lines * corridor) per level instead of
+    // O(lines * cells); with a corridor as wide as the picture it is exact
+    private int[] findSeamCoarseToFine(int corridor, boolean vert) {
+        orient(vert);
+        if (corridor < 1) throw new IllegalArgumentException();
 
+        Pyramid p = pyramid();
+        int top = p.energy.length - 1;
+        if (top == 0) return findSeam(vert);
+
+        long start = SeamCarverMetrics.start();
+        int[] seam = bandSeam(p.energy[top], p.lines[top], p.cells[top], p.strides[top], 1,
+                              new int[p.lines[top]], p.cells[top]);
+        for (int k = top - 1; k >= 1; k--) {
+            seam = bandSeam(p.energy[k], p.lines[k], p.cells[k], p.strides[k], 1,
+                            project(seam, p.lines[k], p.cells[k]), corridor);
+        }
+        seam = bandSeam(weight, lines, cells, lineStep, cellStep, project(seam, lines, cells), corridor);
+        SeamCarverMetrics.stop(SeamCarverMetrics.COSTS, start, width, height);
+        return seam;
     }
 
     // sequence of indices for vertical seam
     public int[] findVerticalSeam() {
+        return findSeam(true);
+    }
+
+    // sequence of indices for horizontal seam
+    public int[] findHorizontalSeam() {
+        return findSeam(false);
+    }
+
+    // the cheapest vertical seam within radius columns of the seam near in
+    // every row, e.g. the seam of the previous frame of a video; costs
+    // O(height * radius) instead of a full pass over the picture
+    public int[] findVerticalSeam(int[] near, int radius) {
+        return findSeamNear(near, radius, true);
+    }
+
+    // the cheapest horizontal seam within radius rows of the seam near in
+    // every column
+    public int[] findHorizontalSeam(int[] near, int radius) {
+        return findSeamNear(near, radius, false);
+    }
+
+    // a vertical seam found coarse to fine on an energy pyramid, refined on
+    // each level within corridor columns of the seam from the level above;
+    // not always the cheapest, the wider the corridor the closer it gets
+    public int[] approximateVerticalSeam(int corridor) {
+        return findSeamCoarseToFine(corridor, true);
+    }
+
+    // a horizontal seam found coarse to fine, see approximateVerticalSeam()
+    public int[] approximateHorizontalSeam(int corridor) {
+        return findSeamCoarseToFine(corridor, false);
+    }
+
+    // first and last cell of line l, after seam has been removed, whose
+    // energy can differ: the two pixels that met across the seam plus any
+    // pixel whose neighbour in the line before or after shifted differently
+    private int bandLo(int[] seam, int l) {
+        int lo = seam[l];
+        if (l > 0) lo = Math.min(lo, seam[l - 1]);
+        if (l < lines - 1) lo = Math.min(lo, seam[l + 1]);
+        return Math.max(lo - 1, 0);
+    }
+
+    private int bandHi(int[] seam, int l) {
+        int hi = seam[l];
+        if (l > 0) hi = Math.max(hi, seam[l - 1]);
+        if (l < lines - 1) hi = Math.max(hi, seam[l + 1]);
+        return Math.min(hi, cells - 1);
+    }
 
-        num = width * height;
+    // redo the cost table in a band around the removed seam; the band starts
+    // one pixel either side of the changed energies and only widens, line by
+    // line, under the cells whose cost actually changed
+    private void repairCosts(int[] seam) {
+        int dirtyLo = cells;
+        int dirtyHi = -1;
 
-        Digraph G = new Digraph(num + 2);
+        for (int l = 0; l < lines; l++) {
+            int lo = bandLo(seam, l) - 1;
+            int hi = bandHi(seam, l) + 1;
+            if (dirtyLo <= dirtyHi) {
+                lo = Math.min(lo, dirtyLo - 1);
+                hi = Math.max(hi, dirtyHi + 1);
+            }
+            lo = Math.max(lo, 0);
+            hi = Math.min(hi, cells - 1);
 
-        for (int i = 0; i < num + 2; i++) {
-            for (int j : adj(i)) G.addEdge(i, j);
+            dirtyLo = cells;
+            dirtyHi = -1;
+            for (int c = lo; c <= hi; c++) {
+                int i = l * lineStep + c * cellStep;
+                double old = distTo[i];
+                relax(c, l);
+                if (distTo[i] != old) {
+                    if (c < dirtyLo) dirtyLo = c;
+                    dirtyHi = c;
+                }
+            }
         }
+    }
 
-        Topological topological = new Topological(G);
+    // shift the cells after seam[l] in every line down by one
+    private void shiftCells(int[] seam, boolean withCosts) {
+        for (int l = 0; l < lines; l++) {
+            int from = l * lineStep + (seam[l] + 1) * cellStep;
+            int length = cells - seam[l] - 1;
 
-        distTo = new double[num + 2];
-        edgeTo = new int[num + 2];
+            if (cellStep == 1) {
+                System.arraycopy(rgb, from, rgb, from - 1, length);
+                System.arraycopy(weight, from, weight, from - 1, length);
+                if (withCosts) {
+                    System.arraycopy(distTo, from, distTo, from - 1, length);
+                    System.arraycopy(edgeTo, from, edgeTo, from - 1, length);
+                }
+                if (origin != null) System.arraycopy(origin, from, origin, from - 1, length);
+                continue;
+            }
 
-        for (int h = 0; h < height; h++) {
-            for (int w = 0; w < width; w++) {
-                distTo[h * width + w] = Double.POSITIVE_INFINITY;
+            for (int i = from; i < from + length * cellStep; i += cellStep) {
+                rgb[i - cellStep] = rgb[i];
+                weight[i - cellStep] = weight[i];
+                if (withCosts) {
+                    distTo[i - cellStep] = distTo[i];
+                    edgeTo[i - cellStep] = edgeTo[i];
+                }
+                if (origin != null) origin[i - cellStep] = origin[i];
             }
         }
+    }
+
+    // check seam is a seam of the current lines and cells
+    private void checkSeam(int[] seam) {
+        if (seam == null) throw new NullPointerException();
+        if (seam.length != lines) throw new IllegalArgumentException();
+
+        for (int l = 0; l < seam.length; l++) {
+            if (seam[l] < 0 || seam[l] >= cells) throw new IllegalArgumentException();
+            if (l > 0 && Math.abs(seam[l] - seam[l - 1]) > 1) throw new IllegalArgumentException();
+        }
+    }
+
+    // remove a seam in the given direction from current picture
+    private void removeSeam(int[] seam, boolean vert) {
+        if (seam == null) throw new NullPointerException();
+
+        orient(vert);
+        if (cells <= 1) throw new IllegalArgumentException();
+        checkSeam(seam);
+
+        // one removal across storage rows is cheaper than a transpose, a run
+        // of them is not
+        if (cellStep != 1 && ++stridedRemovals >= FLIP_AFTER) {
+            transpose();
+            orient(vert);
+        }
+        if (cellStep == 1) stridedRemovals = 0;
 
-        distTo[num + 1] = 0.0;
-        distTo[num] = Double.POSITIVE_INFINITY;
+        long start = SeamCarverMetrics.start();
+        boolean withCosts = validLines[dir] == lines;
+        shiftCells(seam, withCosts);
 
-        for (int v : topological.order()) {
-            for (int e : G.adj(v)) {
-                relax(v, e);
+        if (vert) width--;
+        else      height--;
+        orient(vert);
+        shrinkPyramid(seam);
+        pyramids[1 - dir] = null;
+        SeamCarverMetrics.stop(SeamCarverMetrics.REMOVAL, start, width, height);
+
+        start = SeamCarverMetrics.start();
+        for (int l = 0; l < lines; l++) {
+            computeEnergies(l, bandLo(seam, l), bandHi(seam, l));
+        }
+        SeamCarverMetrics.stop(SeamCarverMetrics.ENERGY, start, width, height);
+
+        if (withCosts) {
+            start = SeamCarverMetrics.start();
+            repairCosts(seam);
+            SeamCarverMetrics.stop(SeamCarverMetrics.COSTS, start, width, height);
+        } else {
+            validLines[dir] = 0;
+        }
+
+        // in the other direction the seam's cells are lines; the lines before
+        // its first cell, less one for the energy band, kept their place,
+        // energies and costs
+        int first = seam[0];
+        for (int l = 1; l < seam.length; l++) first = Math.min(first, seam[l]);
+        validLines[1 - dir] = Math.min(validLines[1 - dir], Math.max(first - 1, 0));
+    }
+
+    // remove vertical seam from current picture
+    public void removeVerticalSeam(int[] seam) {
+        removeSeam(seam, true);
+    }
+
+    // remove horizontal seam from current picture
+    public void removeHorizontalSeam(int[] seam) {
+        removeSeam(seam, false);
+    }
+
+    // up to n seams, in the given direction, that share no pixel; all are
+    // read off one cost table, cheapest end first, so the first one is the
+    // seam findSeam() returns and the others ignore its removal
+    private int[][] findDisjointSeams(int n, boolean vert) {
+        updateCosts(vert);
+
+        // ends by cost, ties by the larger cell: each key holds the rank of
+        // the end's cost in its high half (equal costs find the same slot of
+        // the sorted costs) and the cell, counted from the right, in its low
+        // half, so that a plain sort of the keys puts them in that order
+        int last = (lines - 1) * lineStep;
+        double[] costs = new double[cells];
+        for (int c = 0; c < cells; c++) costs[c] = distTo[last + c * cellStep];
+        double[] sorted = costs.clone();
+        Arrays.sort(sorted);
+        long[] order = new long[cells];
+        for (int c = 0; c < cells; c++) {
+            long rank = Arrays.binarySearch(sorted, costs[c]);
+            order[c] = rank << 32 | (cells - 1 - c);
+        }
+        Arrays.sort(order);
+
+        // cell j of line l is taken when occupied[l * cells + j] is set
+        if (occupied == null || occupied.length < lines * cells) occupied = new boolean[lines * cells];
+        int[][] seams = new int[n][];
+        int[] path = new int[lines];
+        int found = 0;
+
+        for (int t = 0; t < cells && found < n; t++) {
+            int j = cells - 1 - (int) order[t];
+            boolean free = true;
+            for (int l = lines - 1; l >= 0 && free; l--) {
+                free = !occupied[l * cells + j];
+                path[l] = j;
+                j += edgeTo[l * lineStep + j * cellStep];
             }
+            if (!free) continue;
+
+            for (int l = 0; l < lines; l++) occupied[l * cells + path[l]] = true;
+            seams[found++] = path.clone();
         }
 
-        int[] path = new int[height];
+        for (int s = 0; s < found; s++) {
+            for (int l = 0; l < lines; l++) occupied[l * cells + seams[s][l]] = false;
+        }
+        return Arrays.copyOf(seams, found);
+    }
+
+    // remove disjoint seams in the given direction with one compaction pass
+    // per line, then recompute all energies
+    private void cutSeams(int[][] seams, boolean vert) {
+        long start = SeamCarverMetrics.start();
+        int n = seams.length;
+        int[] cut = new int[n];
 
-        int j = num;
-        Stack<Integer> s = new Stack<Integer>();
-        while (edgeTo[j] != num + 1) {
-            j = edgeTo[j];
-            s.push(j % width);
+        for (int l = 0; l < lines; l++) {
+            for (int s = 0; s < n; s++) cut[s] = seams[s][l];
+            Arrays.sort(cut);
+
+            // the cells between cut s and cut s + 1 move down by s + 1
+            for (int s = 0; s < n; s++) {
+                int from = cut[s] + 1;
+                int end = (s + 1 < n) ? cut[s + 1] : cells;
+                int at = l * lineStep + from * cellStep;
+
+                if (cellStep == 1) {
+                    System.arraycopy(rgb, at, rgb, at - s - 1, end - from);
+                    continue;
+                }
+                for (int c = from; c < end; c++, at += cellStep) {
+                    rgb[at - (s + 1) * cellStep] = rgb[at];
+                }
+            }
         }
 
-        for (int i = 0; i < height; i++) {
-            path[i] = s.pop();
+        if (vert) width -= n;
+        else      height -= n;
+        orient(vert);
+        SeamCarverMetrics.stop(SeamCarverMetrics.REMOVAL, start, width, height);
+
+        computeAllEnergies();
+        validLines[HORIZONTAL] = 0;
+        validLines[VERTICAL] = 0;
+        pyramids[HORIZONTAL] = null;
+        pyramids[VERTICAL] = null;
+    }
+
+    // remove k seams in the given direction; with one seam per pass each seam
+    // reuses the cost table of the previous one and only relaxes its band
+    private void removeSeams(int k, int seamsPerPass, boolean vert) {
+        orient(vert);
+        if (k < 0 || k >= cells || seamsPerPass < 1) throw new IllegalArgumentException();
+
+        if (seamsPerPass == 1) {
+            for (int i = 0; i < k; i++) {
+                removeSeam(findSeam(vert), vert);
+            }
+            return;
         }
 
-        return path;
+        while (k > 0) {
+            int[][] seams = findDisjointSeams(Math.min(k, seamsPerPass), vert);
+            cutSeams(seams, vert);
+            k -= seams.length;
+        }
     }
 
-    // sequence of indices for horizontal seam
-    public int[] findHorizontalSeam() {
-        transpose();
-        int[] path = findVerticalSeam();
-        transpose();
-        return path;
+    // remove k vertical seams; the result is exactly that of k calls to
+    // findVerticalSeam() and removeVerticalSeam()
+    public void removeVerticalSeams(int k) {
+        removeSeams(k, 1, true);
     }
 
-    public void removeVerticalSeam(int[] seam) {
-        if (seam == null) throw new NullPointerException();
-        if (seam.length != height) throw new IllegalArgumentException();
+    // remove k vertical seams, taking up to seamsPerPass disjoint seams from
+    // each cost table. Much cheaper for large k, but approximate: the later
+    // seams of a pass are chosen without seeing the earlier ones removed
+    public void removeVerticalSeams(int k, int seamsPerPass) {
+        removeSeams(k, seamsPerPass, true);
+    }
 
-        for (int i = 0; i < seam.length; i++) {
-            if (seam[i] < 0 || seam[i] >= width) throw new IllegalArgumentException();
-            if (i < seam.length - 1) {
-                if (Math.abs(seam[i + 1] - seam[i]) > 1) throw new IllegalArgumentException();
+    // remove k horizontal seams; the result is exactly that of k calls to
+    // findHorizontalSeam() and removeHorizontalSeam()
+    public void removeHorizontalSeams(int k) {
+        removeSeams(k, 1, false);
+    }
+
+    // remove k horizontal seams, taking up to seamsPerPass disjoint seams
+    // from each cost table; approximate, see removeVerticalSeams(int, int)
+    public void removeHorizontalSeams(int k, int seamsPerPass) {
+        removeSeams(k, seamsPerPass, false);
+    }
+
+    // check targetWidth by targetHeight is a size the picture can shrink to
+    private void checkTarget(int targetWidth, int targetHeight) {
+        if (targetWidth < 1 || targetWidth > width || targetHeight < 1 || targetHeight > height) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // the thumbnail the order of resize() is chosen on: a picture scaled
+    // down by factor, one pixel per factor by factor block, with columns
+    // columns and rows rows to remove. Its transport map keeps one carver
+    // per column, which is held to TRANSPORT_PIXELS pixels in all, and
+    // carves (rows + 1) * (columns + 1) seams, held to TRANSPORT_WORK pixels
+    private static final int TRANSPORT_PIXELS = 1 << 20;
+    private static final int TRANSPORT_WORK = 1 << 25;
+
+    // the number of thumbnail seams standing for n seams of the picture,
+    // at most cells - 1
+    private static int thumbnailSeams(int n, int factor, int cells) {
+        if (n == 0) return 0;
+        return Math.min(Math.max(1, (int) Math.round(n / (double) factor)), cells - 1);
+    }
+
+    // a carver of the picture scaled down by factor, each pixel the per
+    // channel mean of a factor by factor block; for factor 1 a copy of this
+    // one without cost tables
+    private SeamCarver thumbnail(int factor) {
+        if (factor == 1) return new SeamCarver(this, false);
+
+        int W = (width + factor - 1) / factor;
+        int H = (height + factor - 1) / factor;
+        int[] packed = new int[W * H];
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                int r = 0, g = 0, b = 0, n = 0;
+                for (int h = y * factor; h < Math.min((y + 1) * factor, height); h++) {
+                    for (int w = x * factor; w < Math.min((x + 1) * factor, width); w++) {
+                        int c = rgb[index(w, h)];
+                        r += (c >> 16) & 0xFF;
+                        g += (c >> 8) & 0xFF;
+                        b += c & 0xFF;
+                        n++;
+                    }
+                }
+                packed[y * W + x] = ((r / n) << 16) | ((g / n) << 8) | (b / n);
             }
+        }
+        return new SeamCarver(packed, W, H);
+    }
 
-            System.arraycopy(picColor[i], seam[i] + 1, picColor[i], seam[i], width - seam[i] - 1);
-            System.arraycopy(weight[i], seam[i] + 1, weight[i], seam[i], width - seam[i] - 1);
+    // remove the n cheapest seams in the given direction one by one;
+    // returns their total energy
+    private double removeCheapest(int n, boolean vert) {
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += seamCost(vert);
+            removeSeam(findSeam(vert), vert);
         }
-        width--;
+        return total;
     }
 
-    // remove horizontal seam from current picture
-    public void removeHorizontalSeam(int[] seam) {
-        if (seam == null) throw new NullPointerException();
-        if (seam.length != width) throw new IllegalArgumentException();
+    // shrink the picture to targetWidth by targetHeight, choosing the order
+    // of vertical and horizontal removals by the transport map dynamic
+    // program: T(r, c), the energy removed to take off r rows and c columns,
+    // is the cheaper of T(r - 1, c) plus a horizontal seam and T(r, c - 1)
+    // plus a vertical one. Like the original transport map, each (r, c)
+    // keeps only the picture it chose, so the order is optimal for those
+    // pictures rather than over every possible history.
+    //
+    // T is filled in on a thumbnail, scaled down just enough that the
+    // pictures along one row of T, kept as carvers without their copied
+    // cost tables, and the seams of all of T stay within fixed budgets; for
+    // small pictures and few seams that is the picture itself and the
+    // order is exact. Only the choice at each (r, c) is kept. The path
+    // back from the far corner, each thumbnail seam standing for an equal
+    // share of the picture's seams, is then replayed on this carver, which
+    // keeps its cost tables between steps like resizeGreedy(); returns the
+    // total energy removed
+    public double resize(int targetWidth, int targetHeight) {
+        checkTarget(targetWidth, targetHeight);
+
+        int cols = width - targetWidth;
+        int rows = height - targetHeight;
+
+        int factor = 1;
+        int C, R;
+        while (true) {
+            int W = (width + factor - 1) / factor;
+            int H = (height + factor - 1) / factor;
+            C = thumbnailSeams(cols, factor, W);
+            R = thumbnailSeams(rows, factor, H);
+            long row = (long) (C + 1) * W * H;
+            if (row <= TRANSPORT_PIXELS && (R + 1) * row <= TRANSPORT_WORK) break;
+            factor++;
+        }
+
+        // fromLeft[r * (C + 1) + c]: T(r, c) came from T(r, c - 1)
+        boolean[] fromLeft = new boolean[(R + 1) * (C + 1)];
+        SeamCarver[] carvers = new SeamCarver[C + 1];
+        double[] removed = new double[C + 1];
+
+        carvers[0] = thumbnail(factor);
+        for (int c = 1; c <= C; c++) {
+            carvers[c] = new SeamCarver(carvers[c - 1], false);
+            removed[c] = removed[c - 1] + carvers[c].removeCheapest(1, true);
+            fromLeft[c] = true;
+        }
 
-        transpose();
-        removeVerticalSeam(seam);
-        transpose();
+        for (int r = 1; r <= R; r++) {
+            for (int c = 0; c <= C; c++) {
+                double above = removed[c] + carvers[c].seamCost(false);
+                double left = Double.POSITIVE_INFINITY;
+                if (c > 0) left = removed[c - 1] + carvers[c - 1].seamCost(true);
+
+                // carvers[c - 1] is already at row r, carvers[c] still at r - 1
+                if (above <= left) {
+                    carvers[c].removeCheapest(1, false);
+                    removed[c] = above;
+                } else {
+                    carvers[c] = new SeamCarver(carvers[c - 1], false);
+                    carvers[c].removeCheapest(1, true);
+                    removed[c] = left;
+                    fromLeft[r * (C + 1) + c] = true;
+                }
+            }
+        }
+        carvers = null;
+
+        boolean[] vertical = new boolean[R + C];
+        for (int k = R + C - 1, r = R, c = C; k >= 0; k--) {
+            vertical[k] = fromLeft[r * (C + 1) + c];
+            if (vertical[k]) c--;
+            else             r--;
+        }
+
+        // the i-th of C thumbnail columns stands for the columns up to
+        // cols * i / C; a direction without thumbnail seams goes last
+        double total = 0;
+        int c = 0;
+        int r = 0;
+        for (boolean vert : vertical) {
+            if (vert) {
+                c++;
+                total += removeCheapest(cols * c / C - cols * (c - 1) / C, true);
+            } else {
+                r++;
+                total += removeCheapest(rows * r / R - rows * (r - 1) / R, false);
+            }
+        }
+        total += removeCheapest(width - targetWidth, true);
+        total += removeCheapest(height - targetHeight, false);
+        return total;
+    }
+
+    // shrink the picture to targetWidth by targetHeight, each step removing
+    // whichever of the cheapest vertical and horizontal seam costs less.
+    // Each direction keeps its cost table, so a step relaxes only the band
+    // of the last seam in its own direction and the lines after the seam's
+    // start in the other; returns the total energy of the removed seams
+    public double resizeGreedy(int targetWidth, int targetHeight) {
+        checkTarget(targetWidth, targetHeight);
+
+        double total = 0;
+        while (width > targetWidth || height > targetHeight) {
+            boolean vert = height == targetHeight
+                    || (width > targetWidth && seamCost(true) <= seamCost(false));
+            total += seamCost(vert);
+            removeSeam(findSeam(vert), vert);
+        }
+        return total;
+    }
+
+    // the k cheapest seams in the given direction, as cells of the current
+    // picture: they are removed one after the other from a copy that tracks
+    // where each of its pixels came from, so this costs about as much as
+    // removing k seams
+    private int[][] cheapestSeams(int k, boolean vert) {
+        SeamCarver copy = new SeamCarver(this, true);
+        copy.origin = new int[rgb.length];
+        for (int l = 0; l < lines; l++) {
+            for (int c = 0; c < cells; c++) {
+                copy.origin[l * lineStep + c * cellStep] = c;
+            }
+        }
+
+        int[][] seams = new int[k][];
+        for (int s = 0; s < k; s++) {
+            int[] seam = copy.findSeam(vert);
+            seams[s] = new int[seam.length];
+            for (int l = 0; l < seam.length; l++) {
+                seams[s][l] = copy.origin[l * copy.lineStep + seam[l] * copy.cellStep];
+            }
+            copy.removeSeam(seam, vert);
+        }
+        return seams;
+    }
+
+    // per channel average of two packed colours
+    private static int blend(int a, int b) {
+        int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF)) / 2;
+        int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF)) / 2;
+        int bl = ((a & 0xFF) + (b & 0xFF)) / 2;
+        return (r << 16) | (g << 8) | bl;
+    }
+
+    // copy length cells of line l, from cell c on, into to[at..]
+    private void copyCells(int l, int c, int length, int[] to, int at) {
+        int from = l * lineStep + c * cellStep;
+        if (cellStep == 1) {
+            System.arraycopy(rgb, from, to, at, length);
+            return;
+        }
+        for (int i = 0; i < length; i++, from += cellStep) {
+            to[at + i] = rgb[from];
+        }
+    }
+
+    // widen the picture by one cell per seam: each line is copied into a
+    // new buffer, segment by segment, with the average of every seam pixel
+    // and the next one inserted after it. The new storage has the lines as
+    // rows, so energies are recomputed contiguously and the cost tables go
+    private void insertSeams(int[][] seams, boolean vert) {
+        int n = seams.length;
+        int wider = cells + n;
+        int[] temp = new int[lines * wider];
+        int[] cut = new int[n];
+
+        for (int l = 0; l < lines; l++) {
+            for (int s = 0; s < n; s++) cut[s] = seams[s][l];
+            Arrays.sort(cut);
+
+            int at = l * wider;
+            int c = 0;
+            for (int s = 0; s < n; s++) {
+                copyCells(l, c, cut[s] + 1 - c, temp, at);
+                at += cut[s] + 1 - c;
+                c = cut[s] + 1;
+
+                int i = l * lineStep + cut[s] * cellStep;
+                temp[at++] = (c < cells) ? blend(rgb[i], rgb[i + cellStep]) : rgb[i];
+            }
+            copyCells(l, c, cells - c, temp, at);
+        }
+
+        rgb = temp;
+        weight = new double[temp.length];
+        stride = wider;
+        transposed = !vert;
+        stridedRemovals = 0;
+        if (vert) width += n;
+        else      height += n;
+
+        for (int d = 0; d < 2; d++) {
+            distTos[d] = null;
+            edgeTos[d] = null;
+            validLines[d] = 0;
+            pyramids[d] = null;
+        }
+        orient(vert);
+        computeAllEnergies();
+    }
+
+    // enlarge the picture by k seams in the given direction
+    private void enlarge(int k, boolean vert) {
+        orient(vert);
+        if (k < 0 || k >= cells) throw new IllegalArgumentException();
+        if (k == 0) return;
+
+        insertSeams(cheapestSeams(k, vert), vert);
+    }
+
+    // widen the picture by k columns, 0 <= k < width: the k vertical seams
+    // removeVerticalSeams(k) would take out are each doubled, the copy being
+    // the average of a seam pixel and its right neighbour
+    public void insertVerticalSeams(int k) {
+        enlarge(k, true);
+    }
 
+    // heighten the picture by k rows, 0 <= k < height, doubling the k
+    // horizontal seams removeHorizontalSeams(k) would take out
+    public void insertHorizontalSeams(int k) {
+        enlarge(k, false);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,148 @@
+/*************************************************************************
+ *  Compilation:  javac -d . ../common/Benchmark.java SeamCarverBenchmark.java
+ *  Execution:    java SeamCarverBenchmark [picture ...]
+ *  Dependencies: ../common/Benchmark.java SeamCarver.java
+ *                SeamCarverMetrics.java SCUtility.java Picture.java
+ *
+ *
+ *  Micro-benchmarks for the SeamCarver hot paths: construction (energy
+ *  pass), findVerticalSeam() and findHorizontalSeam() on a fresh carver
+ *  (full cost pass), find/remove steps in either direction (a removal,
+ *  its band repair of the cost table and the backtrack to the next seam),
+ *  and coarse-to-fine seams with a corridor of 4, alone and with their
+ *  removal, their pyramid already built. Each picture is a PNG file name
+ *  or a size such as 3840x2160 for a random picture from SCUtility; the
+ *  default is the bundled 12x10.png and HJocean.png plus random 1080p, 4K
+ *  and 8K pictures. 8K needs a large heap, e.g. -Xmx8g.
+ *
+ *  Each is run by Benchmark.measure(), which prints time and allocation
+ *  per operation. Set-up work (building the carver under test) is not
+ *  counted; the removal benchmarks take several seams off one carver per
+ *  timed run and only build it again once it has lost half its width or
+ *  height, so they are not dominated by set-up on large pictures. With
+ *  -Dalgs4.metrics=true the SeamCarverMetrics summary of all phases is
+ *  printed at the end, and the timings include the cost of collecting it.
+ *
+ *************************************************************************/
+
+public class SeamCarverBenchmark {
+
+    // find/remove steps on one carver, n to a timed run. The carver is
+    // built again, untimed, only when the next run would take it below half
+    // the picture; until then each find after a removal only backtracks the
+    // cost table (or pyramid, for a corridor) the removal repaired
+    private static class Removals extends Benchmark {
+        private final Picture picture;
+        private final boolean vertical;
+        private final int corridor;    // 0 for exact seams
+        private final int n;
+        private SeamCarver sc;
+        private int[] seam;
+
+        Removals(Picture picture, boolean vertical, int corridor) {
+            this.picture = picture;
+            this.vertical = vertical;
+            this.corridor = corridor;
+            this.n = Math.max(1, Math.min(10, size(picture) / 4));
+        }
+
+        private int size(Picture picture) {
+            return vertical ? picture.width() : picture.height();
+        }
+
+        private int[] find() {
+            if (corridor > 0) {
+                return vertical ? sc.approximateVerticalSeam(corridor) : sc.approximateHorizontalSeam(corridor);
+            }
+            return vertical ? sc.findVerticalSeam() : sc.findHorizontalSeam();
+        }
+
+        void setUp() {
+            int size = sc == null ? 0 : vertical ? sc.width() : sc.height();
+            if (size - n < size(picture) / 2) {
+                sc = new SeamCarver(picture);
+                seam = find();
+            }
+        }
+
+        int run() {
+            for (int i = 0; i < n; i++) {
+                if (vertical) sc.removeVerticalSeam(seam);
+                else          sc.removeHorizontalSeam(seam);
+                seam = find();
+            }
+            return n;
+        }
+    }
+
+    private static Picture load(String name) {
+        int x = name.indexOf('x');
+        if (name.endsWith(".png") || x < 0) return new Picture(name);
+        return SCUtility.randomPicture(Integer.parseInt(name.substring(0, x)),
+                                       Integer.parseInt(name.substring(x + 1)));
+    }
+
+    private static void benchmark(String name) {
+        final Picture picture = load(name);
+
+        Benchmark.measure(name, "construct", new Benchmark() {
+            int run() {
+                new SeamCarver(picture);
+                return 1;
+            }
+        });
+
+        Benchmark.measure(name, "findVerticalSeam", new Benchmark() {
+            SeamCarver sc;
+            void setUp() { sc = new SeamCarver(picture); }
+            int run() {
+                sc.findVerticalSeam();
+                return 1;
+            }
+        });
+
+        Benchmark.measure(name, "findHorizontalSeam", new Benchmark() {
+            SeamCarver sc;
+            void setUp() { sc = new SeamCarver(picture); }
+            int run() {
+                sc.findHorizontalSeam();
+                return 1;
+            }
+        });
+
+        Benchmark.measure(name, "find+remove vertical", new Removals(picture, true, 0));
+        Benchmark.measure(name, "find+remove horizontal", new Removals(picture, false, 0));
+
+        if (picture.width() <= 10 || picture.height() <= 10) return;
+
+        Benchmark.measure(name, "approximate vertical, c=4", new Benchmark() {
+            SeamCarver sc;
+            void setUp() {
+                if (sc != null) return;
+                sc = new SeamCarver(picture);
+                sc.approximateVerticalSeam(4);
+            }
+            int run() {
+                sc.approximateVerticalSeam(4);
+                return 1;
+            }
+        });
+
+        Benchmark.measure(name, "approx+remove vertical", new Removals(picture, true, 4));
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length == 0) {
+            args = new String[] { "12x10.png", "HJocean.png", "1920x1080", "3840x2160", "7680x4320" };
+        }
+
+        Benchmark.header("picture");
+        for (String name : args) {
+            benchmark(name);
+        }
+
+        if (SeamCarverMetrics.isEnabled()) System.out.print(SeamCarverMetrics.snapshot());
+    }
+
+}
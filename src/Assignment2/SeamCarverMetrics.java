@@ -0,0 +1,192 @@
+/*************************************************************************
+ *  Compilation:  javac SeamCarverMetrics.java
+ *  Execution:    none
+ *  Dependencies: none
+ *
+ *
+ *  Optional instrumentation of SeamCarver, off unless the system property
+ *  algs4.metrics is true or enable() is called. While it is on, SeamCarver
+ *  times each piece of work it does, in one of four phases that never
+ *  overlap:
+ *
+ *      energy     computing energies: all of them, the band around a
+ *                 removed seam, or an energy pyramid
+ *      costs      the seam dynamic program: full, band repaired, or
+ *                 restricted to a band or corridor
+ *      transpose  flipping the storage between rows and columns
+ *      removal    shifting pixels, energies and costs over removed seams
+ *
+ *  and adds the time to that phase's counters and power-of-two histogram,
+ *  which snapshot() reads. Each piece of work is also a JDK Flight
+ *  Recorder event, algs4.SeamCarverPhase, with the phase and the picture
+ *  size, which a recording picks up when it has the event enabled. The
+ *  event lives in jfr/SeamCarverEvents.java, apart from the rest, as it
+ *  needs JDK 11 or later to compile and run; it is looked up by name when
+ *  metrics are first enabled, and without it (or jdk.jfr) the counters
+ *  work as before, so SeamCarver itself needs nothing newer than Java 8.
+ *  With it, e.g.
+ *
+ *      javac *.java && javac -d . jfr/SeamCarverEvents.java
+ *      java -Dalgs4.metrics=true -XX:StartFlightRecording=filename=sc.jfr ...
+ *      jfr print --events algs4.SeamCarverPhase sc.jfr
+ *
+ *  Off, each piece of work pays one read of a volatile flag.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class SeamCarverMetrics {
+    public static final int ENERGY = 0;
+    public static final int COSTS = 1;
+    public static final int TRANSPOSE = 2;
+    public static final int REMOVAL = 3;
+    private static final String[] PHASES = { "energy", "costs", "transpose", "removal" };
+
+    // start() when instrumentation is off
+    static final long OFF = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+
+    // where pieces of work go besides the counters; null if
+    // SeamCarverEvents is missing
+    private static volatile Recorder recorder;
+    private static boolean looked;
+
+    // per phase: pieces of work, their total time, and a histogram of
+    // their times in buckets of powers of two nanoseconds (bucket i holds
+    // the times t with 2^(i-1) <= t < 2^i)
+    private static final LongAdder[] counts = new LongAdder[PHASES.length];
+    private static final LongAdder[] nanos = new LongAdder[PHASES.length];
+    private static final AtomicLongArray histograms = new AtomicLongArray(64 * PHASES.length);
+
+    static {
+        for (int p = 0; p < PHASES.length; p++) {
+            counts[p] = new LongAdder();
+            nanos[p] = new LongAdder();
+        }
+        if (Boolean.getBoolean("algs4.metrics")) enable();
+    }
+
+    private SeamCarverMetrics() { }
+
+    // receives every piece of work while metrics are on, as
+    // SeamCarverEvents does
+    interface Recorder {
+        void phase(String phase, int width, int height, long nanos);
+    }
+
+    public static void enable() {
+        synchronized (SeamCarverMetrics.class) {
+            if (!looked) {
+                looked = true;
+                try {
+                    recorder = (Recorder) Class.forName("SeamCarverEvents").getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    recorder = null;
+                }
+            }
+        }
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // the time a piece of work starts, or OFF
+    static long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    // a piece of work in the given phase begun at start, on a width by
+    // height picture
+    static void stop(int phase, long start, int width, int height) {
+        if (start == OFF) return;
+        long time = System.nanoTime() - start;
+
+        counts[phase].increment();
+        nanos[phase].add(time);
+        histograms.incrementAndGet(64 * phase + 64 - Long.numberOfLeadingZeros(Math.max(time, 0)));
+
+        Recorder r = recorder;
+        if (r != null) r.phase(PHASES[phase], width, height, time);
+    }
+
+    // the counters so far, read one by one while carvers may be running,
+    // so they are only roughly consistent with each other
+    public static Snapshot snapshot() {
+        long[] count = new long[PHASES.length];
+        long[] total = new long[PHASES.length];
+        long[][] histogram = new long[PHASES.length][64];
+        for (int p = 0; p < PHASES.length; p++) {
+            count[p] = counts[p].sum();
+            total[p] = nanos[p].sum();
+            for (int i = 0; i < 64; i++) histogram[p][i] = histograms.get(64 * p + i);
+        }
+        return new Snapshot(count, total, histogram);
+    }
+
+    // zero all counters
+    public static void reset() {
+        for (int p = 0; p < PHASES.length; p++) {
+            counts[p].reset();
+            nanos[p].reset();
+        }
+        for (int i = 0; i < histograms.length(); i++) histograms.set(i, 0);
+    }
+
+    public static final class Snapshot {
+        private final long[] count;
+        private final long[] total;
+        private final long[][] histogram;
+
+        Snapshot(long[] count, long[] total, long[][] histogram) {
+            this.count = count;
+            this.total = total;
+            this.histogram = histogram;
+        }
+
+        // pieces of work done in the given phase
+        public long count(int phase) {
+            return count[phase];
+        }
+
+        // their total time, in nanoseconds
+        public long nanos(int phase) {
+            return total[phase];
+        }
+
+        // an upper bound, within a factor of two, on the p-th quantile of
+        // their times, in nanoseconds
+        public long nanos(int phase, double p) {
+            long[] counts = histogram[phase];
+            long n = 0;
+            for (long c : counts) n += c;
+            if (n == 0) return 0;
+
+            long rank = Math.max((long) Math.ceil(p * n), 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return (i == 0) ? 0 : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%-10s %10s %12s %10s %10s\n", "phase", "count", "total ms", "p50 us", "p99 us"));
+            for (int p = 0; p < PHASES.length; p++) {
+                s.append(String.format("%-10s %10d %12.3f %10d %10d\n", PHASES[p], count[p], total[p] / 1e6,
+                                       nanos(p, 0.5) / 1000, nanos(p, 0.99) / 1000));
+            }
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*************************************************************************
+ *  Compilation:  javac SpeedupDemo.java
+ *  Execution:    java SpeedupDemo [megapixels ...]
+ *  Dependencies: SeamCarver.java SCUtility.java Picture.java
+ *
+ *
+ *  Time the energy pass (computeAllEnergies() on a carver already built,
+ *  so the serial decoding of the picture is left out) and findVerticalSeam()
+ *  (cost pass) on random 16:9 pictures of the given sizes, serially and on
+ *  ForkJoinPools of 1, 2, 4, ... 32 threads, and print the speed-up of
+ *  each pool over the serial run. Defaults to 8, 24 and 50 megapixels;
+ *  run with a large heap, e.g. -Xmx8g.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.ForkJoinPool;
+
+public class SpeedupDemo {
+
+    private static final int RUNS = 3;
+
+    // best of RUNS energy pass and seam times, in seconds
+    private static double[] time(Picture picture, ForkJoinPool pool) {
+        double energy = Double.POSITIVE_INFINITY;
+        double seam = Double.POSITIVE_INFINITY;
+
+        for (int r = 0; r < RUNS; r++) {
+            SeamCarver sc = new SeamCarver(picture, pool);
+            long start = System.nanoTime();
+            sc.computeAllEnergies();
+            long mid = System.nanoTime();
+            sc.findVerticalSeam();
+            long end = System.nanoTime();
+
+            energy = Math.min(energy, (mid - start) / 1e9);
+            seam = Math.min(seam, (end - mid) / 1e9);
+        }
+        return new double[] { energy, seam };
+    }
+
+    public static void main(String[] args)
+    {
+        double[] sizes = { 8, 24, 50 };
+        if (args.length > 0) {
+            sizes = new double[args.length];
+            for (int i = 0; i < args.length; i++) sizes[i] = Double.parseDouble(args[i]);
+        }
+
+        System.out.printf("%d processors available\n", Runtime.getRuntime().availableProcessors());
+
+        for (double mp : sizes) {
+            int H = (int) Math.sqrt(mp * 1e6 * 9 / 16);
+            int W = H * 16 / 9;
+            Picture picture = SCUtility.randomPicture(W, H);
+
+            double[] serial = time(picture, null);
+            System.out.printf("\n%d x %d (%.1f MP)\n", W, H, W * (double) H / 1e6);
+            System.out.printf("%8s %10s %8s %10s %8s\n", "threads", "energy s", "speedup", "seam s", "speedup");
+            System.out.printf("%8s %10.3f %8s %10.3f %8s\n", "serial", serial[0], "", serial[1], "");
+
+            for (int threads = 1; threads <= 32; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                double[] t = time(picture, pool);
+                pool.shutdown();
+                System.out.printf("%8d %10.3f %8.2f %10.3f %8.2f\n",
+                                  threads, t[0], serial[0] / t[0], t[1], serial[1] / t[1]);
+            }
+        }
+    }
+
+}
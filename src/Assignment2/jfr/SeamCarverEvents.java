@@ -0,0 +1,55 @@
+/*************************************************************************
+ *  Compilation:  javac -d . jfr/SeamCarverEvents.java  (from the directory
+ *                above; JDK 11 or later)
+ *  Execution:    none
+ *  Dependencies: SeamCarverMetrics.java
+ *
+ *
+ *  The JDK Flight Recorder side of SeamCarverMetrics: every piece of
+ *  work it sees while metrics are on becomes an algs4.SeamCarverPhase
+ *  event. Kept out of the assignment directory because jdk.jfr only
+ *  exists from JDK 11 on; SeamCarverMetrics finds this class by name on
+ *  the class path when it is enabled, and simply records no events if it
+ *  is not there.
+ *
+ *************************************************************************/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public class SeamCarverEvents implements SeamCarverMetrics.Recorder {
+
+    @Name("algs4.SeamCarverPhase")
+    @Label("SeamCarver Phase")
+    @Category("algs4")
+    @Description("A piece of SeamCarver work: energy, costs, transpose or removal")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    public void phase(String phase, int width, int height, long nanos) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.width = width;
+            event.height = height;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*************************************************************************
+ *  Compilation:  javac Benchmark.java
+ *  Execution:    none
+ *  Dependencies: none
+ *
+ *
+ *  The measuring loop SeamCarverBenchmark and WordNetBenchmark share; it
+ *  sits outside both assignment directories and is compiled along with
+ *  either, e.g. javac -d . ../common/Benchmark.java SeamCarverBenchmark.java
+ *
+ *  A benchmark is a subclass: setUp() is not timed, run() is and returns
+ *  the number of operations it did. measure() warms it up, then repeats
+ *  it for at least a second and prints a line of the time per operation,
+ *  the bytes allocated per operation and the allocation rate, from the
+ *  per-thread allocation counter, so that an allocation regression shows
+ *  up next to a throughput one.
+ *
+ *************************************************************************/
+
+import java.lang.management.ManagementFactory;
+
+public abstract class Benchmark {
+
+    private static final int WARMUP = 3;
+    private static final long MIN_NANOS = 1000000000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    void setUp() { }
+
+    abstract int run();
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // the heading of the lines measure() prints, input naming the first column
+    public static void header(String input) {
+        System.out.printf("%-16s %-28s %12s %14s %12s\n", input, "benchmark", "ms/op", "bytes/op", "alloc MB/s");
+    }
+
+    public static void measure(String input, String name, Benchmark bench) {
+        for (int i = 0; i < WARMUP; i++) {
+            bench.setUp();
+            bench.run();
+        }
+
+        long nanos = 0;
+        long bytes = 0;
+        long ops = 0;
+        while (nanos < MIN_NANOS) {
+            bench.setUp();
+            long before = allocated();
+            long start = System.nanoTime();
+            ops += bench.run();
+            nanos += System.nanoTime() - start;
+            bytes += allocated() - before;
+        }
+
+        System.out.printf("%-16s %-28s %12.4f %14.0f %12.1f\n", input, name,
+                          nanos / 1e6 / ops, bytes / (double) ops, bytes / 1e6 / (nanos / 1e9));
+    }
+}